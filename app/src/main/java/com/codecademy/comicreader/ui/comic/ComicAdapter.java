@@ -79,7 +79,7 @@ public class ComicAdapter extends RecyclerView.Adapter<ComicAdapter.ViewHolder>
         holder.ivComicRead.setImageDrawable(null);
 
         // Start new thumbnail task
-        Future<?> task = ThumbnailManager.loadThumbnailAsync(context, Uri.parse(item.getPath()), item.getFormat(), holder.ivComicRead, null, 1);
+        Future<?> task = ThumbnailManager.loadThumbnailAsync(context, Uri.parse(item.getPath()), item.getFormat(), holder.ivComicRead, null);
         thumbnailTasks.put(key, task);
 
         // Popup menu
@@ -31,7 +31,7 @@ import com.codecademy.comicreader.model.Comic;
 import com.codecademy.comicreader.model.Folder;
 import com.codecademy.comicreader.ui.library.LibraryViewModel;
 import com.codecademy.comicreader.ui.recent.RecentViewModel;
-import com.codecademy.comicreader.utils.SystemUtil;
+import com.codecademy.comicreader.utils.PriorityScheduler;
 import com.codecademy.comicreader.view.ComicViewer;
 
 import java.text.DecimalFormat;
@@ -57,7 +57,9 @@ public class ComicFragment extends Fragment {
     private RecentViewModel recentViewModel;
     private ComicAdapter comicAdapter;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Room queries and folder scans, owned by this fragment on the shared scheduler
     private ExecutorService executorService;
+    private ExecutorService scanExecutor;
     private Context appContext;
 
     private static final String PREFS_NAME = "ComicPrefs";
@@ -70,7 +72,12 @@ public class ComicFragment extends Fragment {
 
 
         appContext = requireActivity().getApplicationContext();
-        executorService = SystemUtil.createIOExecutor(appContext);
+        if (executorService == null) {
+            PriorityScheduler scheduler = PriorityScheduler.get(appContext);
+            executorService = scheduler.newGroup(PriorityScheduler.Lane.DB, PriorityScheduler.Priority.VISIBLE);
+            // Background class: a long scan must not take the thread kept for foreground work
+            scanExecutor = scheduler.newGroup(PriorityScheduler.Lane.SCAN, PriorityScheduler.Priority.LIBRARY_THUMBNAIL);
+        }
         loadPreferences();
 
         comicAdapter = new ComicAdapter(new ArrayList<>(), this::onComicClicked, isGridView,requireContext());
@@ -318,17 +325,19 @@ public class ComicFragment extends Fragment {
         binding.progressBar.setVisibility(View.VISIBLE);
         binding.tvScanningBanner.setVisibility(View.VISIBLE);
 
-        executorService.execute(() -> {
-            ComicDatabase db = ComicDatabase.getInstance(requireContext());
+        scanExecutor.execute(() -> {
+            ComicDatabase db = ComicDatabase.getInstance(appContext);
             List<Folder> folders = libraryViewModel.getFolders().getValue();
 
             if (folders == null || folders.isEmpty()) {
                 db.comicDao().deleteAll();
-                mainHandler.post(() -> updateComicsList(new ArrayList<>()));
+                mainHandler.post(() -> {
+                    if (isAdded() && binding != null) updateComicsList(new ArrayList<>());
+                });
                 return;
             }
 
-            SharedPreferences removedPrefs = requireContext().getSharedPreferences("removed_comics", Context.MODE_PRIVATE);
+            SharedPreferences removedPrefs = appContext.getSharedPreferences("removed_comics", Context.MODE_PRIVATE);
             Set<String> removedPaths = new HashSet<>(removedPrefs.getStringSet("removed_paths", new HashSet<>()));
 
             Set<String> currentFolderPaths = folders.stream().map(Folder::getPath).collect(Collectors.toSet());
@@ -348,11 +357,11 @@ public class ComicFragment extends Fragment {
                     .map(Comic::getPath)
                     .collect(Collectors.toSet());
 
-            SharedPreferences scanPrefs = requireContext().getSharedPreferences("FolderScanPrefs", Context.MODE_PRIVATE);
+            SharedPreferences scanPrefs = appContext.getSharedPreferences("FolderScanPrefs", Context.MODE_PRIVATE);
             SharedPreferences.Editor scanEditor = scanPrefs.edit();
 
             for (Folder folder : folders) {
-                DocumentFile dir = DocumentFile.fromTreeUri(requireContext(), Uri.parse(folder.getPath()));
+                DocumentFile dir = DocumentFile.fromTreeUri(appContext, Uri.parse(folder.getPath()));
                 if (dir == null || !dir.exists() || !dir.isDirectory()) continue;
 
                 long lastScan = scanPrefs.getLong(folder.getPath(), 0);
@@ -382,9 +391,11 @@ public class ComicFragment extends Fragment {
     // Recursive scan helper
     private void scanFolderRecursively(DocumentFile directory, List<Comic> comics, Set<String> existingComicPaths) {
         List<Comic> batch = new ArrayList<>();
-        ComicDatabase db = ComicDatabase.getInstance(requireContext());
+        ComicDatabase db = ComicDatabase.getInstance(appContext);
 
         for (DocumentFile file : directory.listFiles()) {
+            // Fragment destroyed (shutdownNow)
+            if (Thread.currentThread().isInterrupted()) return;
             if (file.isDirectory()) {
                 scanFolderRecursively(file, comics, existingComicPaths);
             } else if (file.getName() != null &&
@@ -692,8 +703,12 @@ public class ComicFragment extends Fragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // Drop queued work, it would run against a destroyed fragment
         if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
+            executorService.shutdownNow();
+        }
+        if (scanExecutor != null && !scanExecutor.isShutdown()) {
+            scanExecutor.shutdownNow();
         }
     }
 
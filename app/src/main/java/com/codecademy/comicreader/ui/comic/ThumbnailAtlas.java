@@ -0,0 +1,376 @@
+package com.codecademy.comicreader.ui.comic;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.codecademy.comicreader.utils.SystemUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * ThumbnailAtlas - cover thumbnails as raw RGB_565 pixels in one
+ * memory-mapped file, so showing a cover is a copy out of the mapping
+ * instead of a JPEG decode.
+ * File layout: header, slot index, then fixed-size pixel slots (page aligned).
+ * Each index entry holds the URI key, the file fingerprint the cover was
+ * made from, the cover size and its last use; least recently used slots
+ * are reused when the atlas is full. The slot count is fixed when the file
+ * is created, untouched slots stay sparse on disk.
+ * Reads never write to the mapping: last use is kept in memory and flushed
+ * with the next cover write. Pixels are copied outside the lock, a slot
+ * rewritten meanwhile is detected by its version and the read dropped.
+ * Optional (setting "thumbnail_atlas"), ThumbnailDiskCache stays the
+ * full-quality source; turning it off deletes the file.
+ */
+public final class ThumbnailAtlas {
+
+    // Setting "thumbnail_atlas", on by default
+    public static final String PREF_KEY = "thumbnail_atlas";
+    private static final String PREFS_NAME = "comicPrefs";
+
+    private static final String TAG = "ThumbnailAtlas";
+    private static final String FILE_NAME = "thumbnails.atlas";
+
+    private static final int MAGIC = 0x43525441; // "CRTA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    // 1.5x the 100x150 dp cover view: sharp up to hdpi, no larger than needed
+    static final int SLOT_WIDTH = 150;
+    static final int SLOT_HEIGHT = 225;
+    private static final int SLOT_BYTES = SLOT_WIDTH * SLOT_HEIGHT * 2;
+
+    // Index entry: URI key, fingerprint (hex SHA-1), width, height, last use
+    private static final int KEY_LENGTH = 40;
+    private static final int ENTRY_SIZE = 2 * KEY_LENGTH + 4 + 4 + 8;
+    private static final int OFFSET_FINGERPRINT = KEY_LENGTH;
+    private static final int OFFSET_WIDTH = 2 * KEY_LENGTH;
+    private static final int OFFSET_HEIGHT = OFFSET_WIDTH + 4;
+    private static final int OFFSET_USED = OFFSET_HEIGHT + 4;
+
+    private static final int PAGE_SIZE = 4096;
+
+    private static ThumbnailAtlas instance;
+    private static boolean openFailed = false;
+
+    private final int slotCount;
+    private final int pixelsOffset;
+    private final MappedByteBuffer map;
+
+    // URI key -> slot, in access order (eldest first)
+    private final LinkedHashMap<String, Integer> slots = new LinkedHashMap<>(64, 0.75f, true);
+    private final String[] fingerprints;
+    private final ArrayDeque<Integer> free = new ArrayDeque<>();
+
+    // Last use per slot; reads only mark it dirty, writes flush it
+    private final long[] lastUsed;
+    private final BitSet usedDirty;
+
+    // Bumped whenever a slot's pixels are rewritten
+    private final int[] versions;
+
+    private ThumbnailAtlas(int slotCount, MappedByteBuffer map) {
+        this.slotCount = slotCount;
+        this.pixelsOffset = pixelsOffset(slotCount);
+        this.map = map;
+        this.fingerprints = new String[slotCount];
+        this.lastUsed = new long[slotCount];
+        this.usedDirty = new BitSet(slotCount);
+        this.versions = new int[slotCount];
+    }
+
+    /**
+     * Shared atlas, opened (or created) on first call; null if disabled or
+     * it can't be mapped. Does file IO, call from a worker thread.
+     */
+    static ThumbnailAtlas get(Context context) {
+        synchronized (ThumbnailAtlas.class) {
+            // Checked under the lock: never recreates a file delete() just removed
+            if (!isEnabled(context)) return null;
+            if (instance == null && !openFailed) {
+                try {
+                    instance = open(new File(context.getCacheDir(), FILE_NAME),
+                            (int) (SystemUtil.getRecommendedThumbnailAtlasBytes(context) / SLOT_BYTES));
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "Atlas unavailable, using the disk cache only", e);
+                    openFailed = true;
+                }
+            }
+            return instance;
+        }
+    }
+
+    // The atlas if already open (never does IO), for the UI thread
+    static ThumbnailAtlas peek(Context context) {
+        ThumbnailAtlas atlas;
+        synchronized (ThumbnailAtlas.class) {
+            atlas = instance;
+        }
+        return atlas != null && isEnabled(context) ? atlas : null;
+    }
+
+    /**
+     * Drops the shared atlas and deletes its file, for when the setting is
+     * turned off. Workers still holding it finish against the unlinked file.
+     */
+    public static void delete(Context context) {
+        synchronized (ThumbnailAtlas.class) {
+            instance = null;
+            openFailed = false;
+            File file = new File(context.getCacheDir(), FILE_NAME);
+            if (file.exists() && !file.delete()) Log.w(TAG, "Can't delete " + file);
+        }
+    }
+
+    private static boolean isEnabled(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return prefs.getBoolean(PREF_KEY, true);
+    }
+
+    // Maps the file, recreating it if it's missing or from another layout
+    private static ThumbnailAtlas open(File file, int wantedSlots) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            int slotCount = readSlotCount(raf);
+            boolean fresh = slotCount <= 0;
+            if (fresh) {
+                slotCount = Math.max(1, wantedSlots);
+                // Sparse: only written slots take disk space
+                raf.setLength(0);
+                raf.setLength(pixelsOffset(slotCount) + (long) slotCount * SLOT_BYTES);
+            }
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            ThumbnailAtlas atlas = new ThumbnailAtlas(slotCount, map);
+            if (fresh) atlas.writeHeader();
+            else atlas.loadIndex();
+            return atlas;
+        }
+    }
+
+    // Slot count of a valid existing file, or -1
+    private static int readSlotCount(RandomAccessFile raf) throws IOException {
+        if (raf.length() < HEADER_SIZE) return -1;
+        raf.seek(0);
+        if (raf.readInt() != MAGIC || raf.readInt() != VERSION) return -1;
+        if (raf.readInt() != SLOT_WIDTH || raf.readInt() != SLOT_HEIGHT) return -1;
+        int slotCount = raf.readInt();
+        if (slotCount <= 0 || raf.length() != pixelsOffset(slotCount) + (long) slotCount * SLOT_BYTES) return -1;
+        return slotCount;
+    }
+
+    private static int pixelsOffset(int slotCount) {
+        int end = HEADER_SIZE + slotCount * ENTRY_SIZE;
+        return (end + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+    }
+
+    private void writeHeader() {
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(8, SLOT_WIDTH);
+        map.putInt(12, SLOT_HEIGHT);
+        map.putInt(16, slotCount);
+        for (int slot = 0; slot < slotCount; slot++) free.add(slot);
+    }
+
+    // Rebuilds the in-memory index, least recently used first
+    private void loadIndex() {
+        List<long[]> used = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            int entry = entryOffset(slot);
+            if (map.get(entry) == 0 || !validSize(map.getInt(entry + OFFSET_WIDTH), map.getInt(entry + OFFSET_HEIGHT))) {
+                free.add(slot);
+            } else {
+                used.add(new long[]{map.getLong(entry + OFFSET_USED), slot});
+            }
+        }
+        used.sort((a, b) -> Long.compare(a[0], b[0]));
+        for (long[] entry : used) {
+            int slot = (int) entry[1];
+            lastUsed[slot] = entry[0];
+            slots.put(readKey(entryOffset(slot)), slot);
+            fingerprints[slot] = readKey(entryOffset(slot) + OFFSET_FINGERPRINT);
+        }
+    }
+
+    /**
+     * Copies a cover out of the mapping, or null.
+     *
+     * @param uriKey      FileFingerprint.hash() of the comic URI
+     * @param fingerprint file fingerprint the cover must match, null = any
+     *                    (a possibly stale cover, checked again later)
+     */
+    Bitmap read(String uriKey, String fingerprint) {
+        int slot;
+        int width;
+        int height;
+        int version;
+        synchronized (this) {
+            Integer found = slots.get(uriKey);
+            if (found == null) return null;
+            slot = found;
+            if (fingerprint != null && !fingerprint.equals(fingerprints[slot])) return null;
+
+            int entry = entryOffset(slot);
+            width = map.getInt(entry + OFFSET_WIDTH);
+            height = map.getInt(entry + OFFSET_HEIGHT);
+            version = versions[slot];
+            lastUsed[slot] = System.currentTimeMillis();
+            usedDirty.set(slot);
+        }
+
+        ByteBuffer pixels = map.duplicate();
+        long start = pixelsOffset + (long) slot * SLOT_BYTES;
+        pixels.position((int) start);
+        pixels.limit((int) start + width * height * 2);
+
+        Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        bmp.copyPixelsFromBuffer(pixels);
+
+        synchronized (this) {
+            if (versions[slot] == version) return bmp;
+        }
+        // Rewritten while copying, the pixels may be torn
+        bmp.recycle();
+        return null;
+    }
+
+    /**
+     * Stores a cover (any config, hardware included), fitted into a slot.
+     * Replaces the comic's previous cover, else takes a free or the least
+     * recently used slot.
+     */
+    void write(String uriKey, String fingerprint, Bitmap cover) {
+        if (uriKey == null || fingerprint == null || cover == null || cover.isRecycled()) return;
+
+        Bitmap pixels = toSlotBitmap(cover);
+        if (pixels == null) return;
+        try {
+            int slot;
+            synchronized (this) {
+                // Taken out of the index while its pixels are copied
+                Integer claimed = slots.remove(uriKey);
+                if (claimed == null) claimed = free.poll();
+                if (claimed == null) claimed = evictEldest();
+                slot = claimed;
+                fingerprints[slot] = null;
+                versions[slot]++;
+                // Invalidate first: a torn write is skipped on the next load
+                map.put(entryOffset(slot), (byte) 0);
+            }
+
+            ByteBuffer target = map.duplicate();
+            long start = pixelsOffset + (long) slot * SLOT_BYTES;
+            target.position((int) start);
+            target.limit((int) start + pixels.getWidth() * pixels.getHeight() * 2);
+            pixels.copyPixelsToBuffer(target);
+
+            synchronized (this) {
+                int entry = entryOffset(slot);
+                writeKey(entry + OFFSET_FINGERPRINT, fingerprint);
+                map.putInt(entry + OFFSET_WIDTH, pixels.getWidth());
+                map.putInt(entry + OFFSET_HEIGHT, pixels.getHeight());
+                lastUsed[slot] = System.currentTimeMillis();
+                usedDirty.set(slot);
+                flushLastUsed();
+                writeKey(entry, uriKey);
+
+                // Another worker may have stored the same comic meanwhile
+                Integer previous = slots.put(uriKey, slot);
+                if (previous != null && previous != slot) release(previous);
+                fingerprints[slot] = fingerprint;
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to store cover", e);
+        } finally {
+            if (pixels != cover) pixels.recycle();
+        }
+    }
+
+    // Writes the last uses marked by reads, for LRU order across restarts
+    private void flushLastUsed() {
+        for (int slot = usedDirty.nextSetBit(0); slot >= 0; slot = usedDirty.nextSetBit(slot + 1)) {
+            map.putLong(entryOffset(slot) + OFFSET_USED, lastUsed[slot]);
+        }
+        usedDirty.clear();
+    }
+
+    // Returns a replaced slot to the free list
+    private void release(int slot) {
+        map.put(entryOffset(slot), (byte) 0);
+        fingerprints[slot] = null;
+        versions[slot]++;
+        usedDirty.clear(slot);
+        free.add(slot);
+    }
+
+    private int evictEldest() {
+        Iterator<Integer> it = slots.values().iterator();
+        int slot = it.next();
+        it.remove();
+        fingerprints[slot] = null;
+        return slot;
+    }
+
+    // Software RGB_565 copy scaled to fit a slot (keeps the aspect ratio)
+    private static Bitmap toSlotBitmap(Bitmap cover) {
+        try {
+            Bitmap bmp = cover;
+            // Hardware bitmaps can't be drawn or read directly
+            if (bmp.getConfig() != Bitmap.Config.RGB_565) bmp = bmp.copy(Bitmap.Config.RGB_565, false);
+            if (bmp == null) return null;
+
+            float scale = Math.min(1f, Math.min(SLOT_WIDTH / (float) bmp.getWidth(),
+                    SLOT_HEIGHT / (float) bmp.getHeight()));
+            if (scale < 1f) {
+                int width = Math.max(1, Math.round(bmp.getWidth() * scale));
+                int height = Math.max(1, Math.round(bmp.getHeight() * scale));
+                Bitmap scaled = Bitmap.createScaledBitmap(bmp, width, height, true);
+                if (bmp != cover && scaled != bmp) bmp.recycle();
+                bmp = scaled;
+            }
+            return bmp;
+        } catch (RuntimeException | OutOfMemoryError e) {
+            Log.w(TAG, "Can't convert cover", e);
+            return null;
+        }
+    }
+
+    private static boolean validSize(int width, int height) {
+        return width > 0 && height > 0 && width <= SLOT_WIDTH && height <= SLOT_HEIGHT;
+    }
+
+    private static int entryOffset(int slot) {
+        return HEADER_SIZE + slot * ENTRY_SIZE;
+    }
+
+    private String readKey(int offset) {
+        byte[] key = new byte[KEY_LENGTH];
+        ByteBuffer view = map.duplicate();
+        view.position(offset);
+        view.get(key);
+        return new String(key, StandardCharsets.US_ASCII);
+    }
+
+    private void writeKey(int offset, String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer view = map.duplicate();
+        view.position(offset);
+        // Hex SHA-1 is exactly KEY_LENGTH characters
+        view.put(bytes, 0, Math.min(bytes.length, KEY_LENGTH));
+    }
+}
@@ -0,0 +1,106 @@
+package com.codecademy.comicreader.ui.comic;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.codecademy.comicreader.utils.FileFingerprint;
+import com.codecademy.comicreader.utils.LruFileCache;
+import com.codecademy.comicreader.utils.SystemUtil;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * ThumbnailDiskCache - cover thumbnails under the app cache dir.
+ * Keyed by FileFingerprint (URI + size + mtime): comics with the same file
+ * name never share a cover, and a replaced file gets a new one.
+ * Files live in an LruFileCache (byte cap, least recently shown deleted
+ * first, temp-file-and-rename writes).
+ * Called from the thumbnail workers only.
+ */
+final class ThumbnailDiskCache {
+
+    private static final String TAG = "ThumbnailDiskCache";
+    private static final String DIR_NAME = "thumbnails";
+    private static final String SUFFIX = ".thumb";
+    private static final int JPEG_QUALITY = 85;
+
+    // Name-keyed covers of older versions, directly in the cache dir
+    private static final String LEGACY_SUFFIX = "_thumb.jpg";
+    private static final String PREFS_NAME = "comicPrefs";
+    private static final String LEGACY_DELETED_KEY = "legacy_thumbnails_deleted";
+
+    private static ThumbnailDiskCache instance;
+
+    private final LruFileCache files;
+    private final File legacyDir;
+    private final SharedPreferences prefs;
+    private boolean legacyChecked = false;
+
+    ThumbnailDiskCache(File dir, long maxBytes, SharedPreferences prefs) {
+        this.files = new LruFileCache(dir, maxBytes, SUFFIX);
+        this.legacyDir = dir.getParentFile();
+        this.prefs = prefs;
+    }
+
+    // Shared instance, capped by SystemUtil.getRecommendedThumbnailDiskCacheBytes()
+    static synchronized ThumbnailDiskCache get(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailDiskCache(new File(context.getCacheDir(), DIR_NAME),
+                    SystemUtil.getRecommendedThumbnailDiskCacheBytes(context),
+                    context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        }
+        return instance;
+    }
+
+    // Cache key of a comic's cover, null if the file has no fingerprint (not cached)
+    static String key(Context context, Uri uri) {
+        return FileFingerprint.of(context, uri);
+    }
+
+    // Reads a cached cover, or null
+    Bitmap read(String key, BitmapFactory.Options opts) {
+        if (key == null) return null;
+        deleteLegacyThumbnails();
+        File file = files.get(key);
+        if (file == null) return null;
+
+        Bitmap bmp = BitmapFactory.decodeFile(file.getAbsolutePath(), opts);
+        if (bmp == null) {
+            Log.w(TAG, "Dropping unreadable thumbnail " + file.getName());
+            files.remove(key);
+        }
+        return bmp;
+    }
+
+    // Stores a cover (software bitmap), replacing any previous one
+    void write(String key, Bitmap bmp) {
+        if (key == null || bmp == null || bmp.isRecycled()) return;
+        deleteLegacyThumbnails();
+        files.put(key, out -> {
+            if (!bmp.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("Compress failed");
+            }
+        });
+    }
+
+    // They may belong to another comic with the same name, never reuse them.
+    // Lists the cache dir once per install, not on every start.
+    private synchronized void deleteLegacyThumbnails() {
+        if (legacyChecked) return;
+        legacyChecked = true;
+        if (prefs.getBoolean(LEGACY_DELETED_KEY, false)) return;
+
+        File[] legacy = legacyDir != null ? legacyDir.listFiles() : null;
+        if (legacy != null) {
+            for (File file : legacy) {
+                if (file.isFile() && file.getName().endsWith(LEGACY_SUFFIX)) file.delete();
+            }
+        }
+        prefs.edit().putBoolean(LEGACY_DELETED_KEY, true).apply();
+    }
+}
@@ -11,18 +11,20 @@ import android.os.ParcelFileDescriptor;
 import android.util.LruCache;
 import android.widget.ImageView;
 
+import com.codecademy.comicreader.utils.FileFingerprint;
 import com.codecademy.comicreader.utils.MappedFileInStream;
+import com.codecademy.comicreader.utils.NaturalOrder;
+import com.codecademy.comicreader.utils.PageBuffer;
+import com.codecademy.comicreader.utils.PriorityScheduler;
 import com.codecademy.comicreader.utils.SystemUtil;
+import com.codecademy.comicreader.view.sources.BitmapConfigStrategy;
 
 import net.sf.sevenzipjbinding.IInArchive;
 import net.sf.sevenzipjbinding.PropID;
 import net.sf.sevenzipjbinding.SevenZip;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.nio.channels.FileChannel;
 import java.util.Locale;
 import java.util.concurrent.ExecutorService;
@@ -33,7 +35,9 @@ import java.util.zip.ZipInputStream;
 /**
  * ThumbnailManager - Java version with cancellable jobs (Future)
  * Supports PDF / CBZ / CBR thumbnails
- * Uses memory cache + disk cache
+ * Uses memory cache + disk cache (ThumbnailDiskCache, keyed by file fingerprint)
+ * Optional ThumbnailAtlas in between: raw pixels copied from a mapped file,
+ * no decode, so covers can be shown right from the UI thread
  * Uses ExecutorService for background tasks
  */
 public final class ThumbnailManager {
@@ -42,53 +46,51 @@ public final class ThumbnailManager {
     private static final LruCache<String, Bitmap> memoryCache =
             new LruCache<>((int) (Runtime.getRuntime().maxMemory() / 1024 / 8));
 
-    // Disk cleanup guard
-    private static boolean cleanupDone = false;
-
     //  ExecutorService + Handler
-    //  Dedicated thread pool for thumbnails, prevents UI lag.
+    //  Shared scheduler at the lowest priority, open comics' pages go first;
+    //  quota of a light background pool so list scrolling can't flood it.
     private static ExecutorService executor;
     private static final Handler mainHandler = new Handler(Looper.getMainLooper());
 
+    // Thumbnail bitmap configs, read once per process
+    private static BitmapConfigStrategy bitmapStrategy;
+
     private ThumbnailManager() {}
 
 
-    private static synchronized void init() {
+    private static synchronized void init(Context context) {
         if (executor == null) {
-            executor = SystemUtil.createExecutor();
+            executor = PriorityScheduler.get(context).newGroup(PriorityScheduler.Lane.DECODE,
+                    PriorityScheduler.Priority.LIBRARY_THUMBNAIL, SystemUtil.getThreadCount());
         }
     }
 
-    // Disk path for thumbnail cache
-    private static File getDiskThumbnail(Context context, Uri uri) {
-        String name = uri.getLastPathSegment();
-        if (name == null) name = "thumb";
-        else if (name.contains("/")) name = name.substring(name.lastIndexOf('/') + 1);
-        return new File(context.getCacheDir(), name + "_thumb.jpg");
-    }
-
     //  Public API: load thumbnail + return Cancellable Future
     public static Future<?> loadThumbnailAsync(
             Context context,
             Uri uri,
             String type,
             ImageView imageView,
-            Integer placeholderRes,
-            int maxAgeDays
+            Integer placeholderRes
     ) {
-        init();
+        init(context);
+        if (bitmapStrategy == null) bitmapStrategy = BitmapConfigStrategy.fromPreferences(context);
 
         final String key = uri.toString();
         imageView.setTag(key);
 
-        if (!cleanupDone) {
-            cleanupOldThumbnails(context.getCacheDir(), maxAgeDays);
-        }
-
-        File thumbFile = getDiskThumbnail(context, uri);
+        ThumbnailDiskCache diskCache = ThumbnailDiskCache.get(context);
+        final String atlasKey = FileFingerprint.hash(key);
 
-        // Show memory cache or placeholder immediately to avoid flicker
+        // Show memory cache, atlas (if already open) or placeholder immediately to avoid flicker
         Bitmap cached = memoryCache.get(key);
+        if (cached == null) {
+            ThumbnailAtlas openAtlas = ThumbnailAtlas.peek(context);
+            // May be stale (fingerprint unchecked), verified below
+            cached = openAtlas != null ? openAtlas.read(atlasKey, null) : null;
+            if (cached != null) memoryCache.put(key, cached);
+        }
+        final boolean shown = cached != null;
         if (cached != null) {
             imageView.setImageBitmap(cached);
         } else if (placeholderRes != null) {
@@ -101,17 +103,37 @@ public final class ThumbnailManager {
                 // Check cancellation
                 if (Thread.currentThread().isInterrupted()) return;
 
-                // Disk cache
-                if (thumbFile.exists()) {
-                    Bitmap bmp = BitmapFactory.decodeFile(thumbFile.getAbsolutePath());
-                    if (bmp != null) {
-                        memoryCache.put(key, bmp);
-                        mainHandler.post(() -> {
-                            if (key.equals(imageView.getTag())) {
-                                imageView.setImageBitmap(bmp);
-                            }
-                        });
-                    }
+                // Disk cache, null key = file can't be identified, not cached
+                String diskKey = ThumbnailDiskCache.key(context, uri);
+
+                // Atlas: only a cover made from this very file
+                ThumbnailAtlas atlas = ThumbnailAtlas.get(context);
+                Bitmap atlasBmp = atlas != null && diskKey != null ? atlas.read(atlasKey, diskKey) : null;
+                if (atlasBmp != null) {
+                    // Already on screen from the UI thread
+                    if (shown) return;
+                    memoryCache.put(key, atlasBmp);
+                    mainHandler.post(() -> {
+                        if (key.equals(imageView.getTag())) {
+                            imageView.setImageBitmap(atlasBmp);
+                        }
+                    });
+                    return;
+                }
+
+                // Display only: may be a hardware bitmap
+                BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inPreferredConfig = bitmapStrategy.displayConfig(true);
+                Bitmap cachedBmp = diskCache.read(diskKey, opts);
+                if (cachedBmp != null) {
+                    // Decoded once, copied from the atlas from now on
+                    if (atlas != null) atlas.write(atlasKey, diskKey, cachedBmp);
+                    memoryCache.put(key, cachedBmp);
+                    mainHandler.post(() -> {
+                        if (key.equals(imageView.getTag())) {
+                            imageView.setImageBitmap(cachedBmp);
+                        }
+                    });
                     return;
                 }
 
@@ -132,10 +154,9 @@ public final class ThumbnailManager {
 
                 if (Thread.currentThread().isInterrupted()) return;
 
-                // Save to disk safely
-                try (FileOutputStream fos = new FileOutputStream(thumbFile)) {
-                    bmp.compress(Bitmap.CompressFormat.JPEG, 85, fos);
-                } catch (Exception ignored) {}
+                // Save to disk (temp file + rename)
+                diskCache.write(diskKey, bmp);
+                if (atlas != null) atlas.write(atlasKey, diskKey, bmp);
 
                 memoryCache.put(key, bmp);
 
@@ -154,29 +175,6 @@ public final class ThumbnailManager {
         });
     }
 
-    // Cleanup old thumbnails
-    private static void cleanupOldThumbnails(File cacheDir, int maxAgeDays) {
-        if (cleanupDone || cacheDir == null || !cacheDir.exists()) return;
-
-        long now = System.currentTimeMillis();
-        long limit = maxAgeDays * 24L * 60L * 60L * 1000L;
-
-        File[] files = cacheDir.listFiles();
-        if (files == null) return;
-
-        for (File file : files) {
-            if (file.getName().endsWith("_thumb.jpg")) {
-                if (now - file.lastModified() > limit) {
-                    boolean deleted = file.delete();
-                    if (!deleted) {
-                        System.err.println("Failed to delete old thumbnail: " + file.getAbsolutePath());
-                    }
-                }
-            }
-        }
-        cleanupDone = true;
-    }
-
     // PDF thumbnail (SAFE RENDER)
     private static Bitmap loadPdfThumbnail(Context context, Uri uri) {
         try (ParcelFileDescriptor pfd =
@@ -216,6 +214,8 @@ public final class ThumbnailManager {
 
                     BitmapFactory.Options opts = new BitmapFactory.Options();
                     opts.inSampleSize = 3;
+                    // Compressed to JPEG afterwards, so software and no alpha needed
+                    opts.inPreferredConfig = bitmapStrategy.softwareConfig(true);
 
                     return BitmapFactory.decodeStream(zis, null, opts);
                 }
@@ -249,13 +249,14 @@ public final class ThumbnailManager {
                         Boolean isFolder = (Boolean) archive.getProperty(i, PropID.IS_FOLDER);
                         if (Boolean.TRUE.equals(isFolder)) continue;
 
-                        String path = String.valueOf(archive.getProperty(i, PropID.PATH))
-                                .toLowerCase(Locale.US);
+                        String path = String.valueOf(archive.getProperty(i, PropID.PATH));
+                        String lower = path.toLowerCase(Locale.US);
 
-                        if (path.endsWith(".jpg") || path.endsWith(".jpeg")
-                                || path.endsWith(".png") || path.endsWith(".webp")) {
+                        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")
+                                || lower.endsWith(".png") || lower.endsWith(".webp")) {
 
-                            if (bestPath == null || path.compareTo(bestPath) < 0) {
+                            // Same order as the viewer, so the cover is page 1
+                            if (bestPath == null || NaturalOrder.compare(path, bestPath) < 0) {
                                 bestPath = path;
                                 selectedIndex = i;
                             }
@@ -264,20 +265,21 @@ public final class ThumbnailManager {
 
                     if (selectedIndex == -1) return null;
 
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream(2 * 1024 * 1024);
-
-                    archive.extractSlow(selectedIndex, data -> {
-                        if (Thread.currentThread().isInterrupted()) return 0;
-                        baos.write(data, 0, data.length);
-                        return data.length;
-                    });
+                    Object size = archive.getProperty(selectedIndex, PropID.SIZE);
 
-                    byte[] bytes = baos.toByteArray();
+                    // Pooled buffer sized from the header, decoded in place
+                    try (PageBuffer page = new PageBuffer(size instanceof Long ? (Long) size : -1L)) {
+                        archive.extractSlow(selectedIndex, data -> {
+                            if (Thread.currentThread().isInterrupted()) return 0;
+                            return page.write(data);
+                        });
 
-                    BitmapFactory.Options opts = new BitmapFactory.Options();
-                    opts.inSampleSize = 3;
+                        BitmapFactory.Options opts = new BitmapFactory.Options();
+                        opts.inSampleSize = 3;
+                        opts.inPreferredConfig = bitmapStrategy.softwareConfig(true);
 
-                    return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts);
+                        return BitmapFactory.decodeByteArray(page.getData(), 0, page.getLength(), opts);
+                    }
                 } finally {
                     inStream.close();
                 }
@@ -50,7 +50,7 @@ import com.codecademy.comicreader.data.LibraryDatabase;
 import com.codecademy.comicreader.model.Folder;
 import com.codecademy.comicreader.data.dao.LibraryDao;
 import com.codecademy.comicreader.utils.FolderUtils;
-import com.codecademy.comicreader.utils.SystemUtil;
+import com.codecademy.comicreader.utils.PriorityScheduler;
 import com.codecademy.comicreader.view.ComicViewer;
 
 public class LibraryFragment extends Fragment {
@@ -68,8 +68,8 @@ public class LibraryFragment extends Fragment {
     private LibraryDatabase libraryDatabase;
     private LibraryDao folderItemDao;
 
-    // ExecutorService for background tasks
-    private final ExecutorService executorService = SystemUtil.createExecutor();
+    // ExecutorService for background tasks (Room, folder checks) on the shared scheduler
+    private ExecutorService executorService;
 
     // Folder picker launcher
     private final ActivityResultLauncher<Intent> folderPickerLauncher =
@@ -89,6 +89,11 @@ public class LibraryFragment extends Fragment {
         binding = FragmentLibraryBinding.inflate(inflater, container, false);
         View view = binding.getRoot();
 
+        if (executorService == null) {
+            executorService = PriorityScheduler.get(requireContext())
+                    .newGroup(PriorityScheduler.Lane.DB, PriorityScheduler.Priority.VISIBLE);
+        }
+
         // Initialize Room database and DAO
         libraryDatabase = LibraryDatabase.getInstance(requireContext());
         folderItemDao = libraryDatabase.folderItemDao();
@@ -589,8 +594,9 @@ public class LibraryFragment extends Fragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // Drop queued work, it would run against a destroyed fragment
         if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
+            executorService.shutdownNow();
         }
     }
 
@@ -25,7 +25,7 @@ import com.codecademy.comicreader.dialog.ClearAllRecentDialog;
 import com.codecademy.comicreader.dialog.SortDialog;
 import com.codecademy.comicreader.model.Comic;
 import com.codecademy.comicreader.ui.comic.ComicAdapter;
-import com.codecademy.comicreader.utils.SystemUtil;
+import com.codecademy.comicreader.utils.PriorityScheduler;
 import com.codecademy.comicreader.view.ComicViewer;
 
 import java.util.ArrayList;
@@ -59,7 +59,10 @@ public class RecentFragment extends Fragment {
         View view = binding.getRoot();
 
         appContext = requireActivity().getApplicationContext();
-        executorService = SystemUtil.createIOExecutor(appContext);
+        if (executorService == null) {
+            executorService = PriorityScheduler.get(appContext)
+                    .newGroup(PriorityScheduler.Lane.DB, PriorityScheduler.Priority.VISIBLE);
+        }
 
         recentViewModel = new ViewModelProvider(requireActivity()).get(RecentViewModel.class);
 
@@ -313,8 +316,9 @@ public class RecentFragment extends Fragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // Drop queued work, it would run against a destroyed fragment
         if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
+            executorService.shutdownNow();
         }
     }
 
@@ -5,11 +5,14 @@ import android.content.SharedPreferences;
 import android.os.Bundle;
 
 import androidx.annotation.Nullable;
+import androidx.preference.ListPreference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.SwitchPreferenceCompat;
 
 import com.codecademy.comicreader.R;
 import com.codecademy.comicreader.theme.ThemeManager;
+import com.codecademy.comicreader.ui.comic.ThumbnailAtlas;
+import com.codecademy.comicreader.view.sources.BitmapConfigStrategy;
 
 public class SettingPreferenceFragment extends PreferenceFragmentCompat {
 
@@ -66,6 +69,29 @@ public class SettingPreferenceFragment extends PreferenceFragmentCompat {
                 return true;
             });
         }
+
+        // Applies to comics opened afterwards
+        ListPreference bitmapModePref = findPreference(BitmapConfigStrategy.PREF_KEY);
+        if (bitmapModePref != null) {
+            bitmapModePref.setValue(prefs.getString(BitmapConfigStrategy.PREF_KEY,
+                    BitmapConfigStrategy.Mode.AUTO.name()));
+            bitmapModePref.setOnPreferenceChangeListener((preference, newValue) -> {
+                prefs.edit().putString(BitmapConfigStrategy.PREF_KEY, (String) newValue).apply();
+                return true;
+            });
+        }
+
+        SwitchPreferenceCompat atlasPref = findPreference(ThumbnailAtlas.PREF_KEY);
+        if (atlasPref != null) {
+            atlasPref.setChecked(prefs.getBoolean(ThumbnailAtlas.PREF_KEY, true));
+            atlasPref.setOnPreferenceChangeListener((preference, newValue) -> {
+                boolean enabled = (Boolean) newValue;
+                prefs.edit().putBoolean(ThumbnailAtlas.PREF_KEY, enabled).apply();
+                // Don't leave the file (up to the atlas cap) behind
+                if (!enabled) ThumbnailAtlas.delete(requireContext());
+                return true;
+            });
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.codecademy.comicreader.utils;
+
+import java.util.ArrayDeque;
+
+/**
+ * ByteArrayPool - process-wide, size-classed pool of byte[] buffers.
+ * Classes are powers of two from 256 KB to 32 MB, so a page always gets a
+ * buffer at most twice its size and the same few arrays are reused while
+ * flipping through a comic instead of becoming garbage.
+ * Larger requests are allocated exactly and never pooled.
+ */
+public final class ByteArrayPool {
+
+    private static final int MIN_CLASS_SHIFT = 18; // 256 KB
+    private static final int MAX_CLASS_SHIFT = 25; // 32 MB
+    private static final int MAX_PER_CLASS = 3;
+
+    // Upper bound for idle buffers kept alive by the pool
+    private static final long MAX_RETAINED_BYTES = 48L * 1024L * 1024L;
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<byte[]>[] free =
+            (ArrayDeque<byte[]>[]) new ArrayDeque<?>[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+    private static long retainedBytes = 0L;
+
+    static {
+        for (int i = 0; i < free.length; i++) free[i] = new ArrayDeque<>(MAX_PER_CLASS);
+    }
+
+    private ByteArrayPool() {}
+
+    /**
+     * Returns a buffer of at least minSize bytes (contents undefined).
+     */
+    public static byte[] acquire(int minSize) {
+        int cls = classFor(minSize);
+        if (cls < 0) return new byte[minSize];
+
+        synchronized (ByteArrayPool.class) {
+            byte[] buffer = free[cls].poll();
+            if (buffer != null) {
+                retainedBytes -= buffer.length;
+                return buffer;
+            }
+        }
+        return new byte[1 << (cls + MIN_CLASS_SHIFT)];
+    }
+
+    /**
+     * Hands a buffer back. Buffers that weren't acquired here (odd sizes)
+     * or that exceed the retention limits are left to the GC.
+     */
+    public static void release(byte[] buffer) {
+        if (buffer == null) return;
+        int cls = classFor(buffer.length);
+        if (cls < 0 || buffer.length != 1 << (cls + MIN_CLASS_SHIFT)) return;
+
+        synchronized (ByteArrayPool.class) {
+            if (free[cls].size() >= MAX_PER_CLASS) return;
+            if (retainedBytes + buffer.length > MAX_RETAINED_BYTES) return;
+            free[cls].push(buffer);
+            retainedBytes += buffer.length;
+        }
+    }
+
+    // Drops all idle buffers (e.g. on memory pressure).
+    public static synchronized void clear() {
+        for (ArrayDeque<byte[]> deque : free) deque.clear();
+        retainedBytes = 0L;
+    }
+
+    // Size class index, -1 if the size is beyond the largest class
+    private static int classFor(int size) {
+        if (size <= 1 << MIN_CLASS_SHIFT) return 0;
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1); // ceil(log2)
+        if (shift > MAX_CLASS_SHIFT) return -1;
+        return shift - MIN_CLASS_SHIFT;
+    }
+}
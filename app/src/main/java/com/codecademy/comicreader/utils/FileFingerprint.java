@@ -0,0 +1,73 @@
+package com.codecademy.comicreader.utils;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stable identity for a comic file: URI + size + last-modified time.
+ * Used to key on-disk caches so a replaced file never serves stale data
+ * and two files with the same name never collide.
+ */
+public final class FileFingerprint {
+
+    private FileFingerprint() {}
+
+    /**
+     * Returns a hex fingerprint, or null if neither size nor mtime is known
+     * (the file can't be told apart from a replacement, so don't cache it).
+     */
+    public static String of(Context context, Uri uri) {
+        long size = -1L;
+        long lastModified = -1L;
+
+        try (Cursor cursor = context.getContentResolver().query(uri,
+                new String[]{OpenableColumns.SIZE, DocumentsContract.Document.COLUMN_LAST_MODIFIED},
+                null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+                int dateIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                if (sizeIndex >= 0 && !cursor.isNull(sizeIndex)) size = cursor.getLong(sizeIndex);
+                if (dateIndex >= 0 && !cursor.isNull(dateIndex)) lastModified = cursor.getLong(dateIndex);
+            }
+        } catch (Exception ignored) {
+            // Not a document provider URI, try the plain file below
+        }
+
+        if (size < 0 && uri.getPath() != null) {
+            File file = new File(uri.getPath());
+            if (file.isFile()) {
+                size = file.length();
+                lastModified = file.lastModified();
+            }
+        }
+
+        if (size < 0 && lastModified < 0) return null;
+        return hash(uri + "|" + size + "|" + lastModified);
+    }
+
+    // SHA-1 hex of the given key (short, filesystem-safe)
+    public static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android
+            throw new IllegalStateException(e);
+        }
+    }
+}
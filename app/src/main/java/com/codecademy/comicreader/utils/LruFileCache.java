@@ -0,0 +1,153 @@
+package com.codecademy.comicreader.utils;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LruFileCache - one directory of cache files with a total byte cap.
+ * - in-memory index (name -> size) in access order, built from the
+ *   directory on first use, oldest file first
+ * - files past the cap are deleted least recently used first
+ * - writes go to a temp file that is renamed into place, so a reader never
+ *   sees a half-written file and leftovers are swept on the next start
+ * Last use survives restarts as the file's modified time.
+ * Used by the page and thumbnail disk caches.
+ */
+public final class LruFileCache {
+
+    private static final String TAG = "LruFileCache";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    // Writes the content of a new entry
+    public interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final File dir;
+    private final long maxBytes;
+    private final String suffix;
+
+    // File name -> size, in access order (eldest first); built on first use
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0L;
+    private boolean loaded = false;
+
+    /**
+     * @param dir      directory holding only this cache's files
+     * @param maxBytes total size cap
+     * @param suffix   file name suffix of entries (".page", ".thumb")
+     */
+    public LruFileCache(File dir, long maxBytes, String suffix) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.suffix = suffix;
+    }
+
+    // True if the entry exists (doesn't count as a use)
+    public synchronized boolean contains(String key) {
+        ensureLoaded();
+        return entries.containsKey(key + suffix);
+    }
+
+    // File of an entry, marked as just used, or null
+    public File get(String key) {
+        String name = key + suffix;
+        synchronized (this) {
+            ensureLoaded();
+            if (entries.get(name) == null) return null;
+        }
+        File file = new File(dir, name);
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Writes an entry through a temp file and renames it into place,
+     * replacing any previous one. Safe from several threads at once.
+     *
+     * @return false if writing or renaming failed (nothing is stored)
+     */
+    public boolean put(String key, Writer writer) {
+        synchronized (this) {
+            ensureLoaded();
+        }
+        if (!dir.exists() && !dir.mkdirs()) return false;
+
+        String name = key + suffix;
+        File file = new File(dir, name);
+        // Unique per thread: two writers of the same key don't share a temp file
+        File tmp = new File(dir, name + "." + Thread.currentThread().getId() + TMP_SUFFIX);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            writer.writeTo(out);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to write " + name, e);
+            tmp.delete();
+            return false;
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return false;
+        }
+        added(name, file.length());
+        return true;
+    }
+
+    // Drops an entry, e.g. one that turned out unreadable
+    public synchronized void remove(String key) {
+        String name = key + suffix;
+        Long size = entries.remove(name);
+        if (size != null) totalBytes -= size;
+        new File(dir, name).delete();
+    }
+
+    private synchronized void added(String name, long size) {
+        Long previous = entries.put(name, size);
+        if (previous != null) totalBytes -= previous;
+        totalBytes += size;
+        trimToSize();
+    }
+
+    // Deletes the least recently used files past the cap
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            new File(dir, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    // Lists the directory once, oldest first (last use)
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(suffix)) {
+                // Leftover temp file of an interrupted write
+                file.delete();
+                continue;
+            }
+            entries.put(name, file.length());
+            totalBytes += file.length();
+        }
+        trimToSize();
+    }
+}
@@ -4,6 +4,7 @@ import net.sf.sevenzipjbinding.IInStream;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
@@ -14,17 +15,70 @@ import java.nio.channels.FileChannel;
  * - Low heap usage (uses direct buffers)
  * Note:
  * Android does not support unmapping MappedByteBuffer explicitly.
- * Keep mappings small to avoid file-lock issues.
+ * Instead of mapping on every read, the stream keeps a few large,
+ * aligned windows (bounded by the mapping budget) and serves reads
+ * and seeks from them. Evicted windows are released to the GC.
+ * Every mapping is a tracked window: a slice() straddling two windows gets
+ * one aligned window covering it, counted against the budget like the rest.
  */
 public final class MappedFileInStream implements IInStream {
 
+    // Default total size of all live mappings (4 windows x 8 MB)
+    public static final long DEFAULT_MAPPING_BUDGET = 32L * 1024L * 1024L;
+
+    // Window starts are aligned to this boundary (multiple of the page size)
+    private static final long WINDOW_ALIGNMENT = 64L * 1024L;
+
+    // Number of windows kept alive at once
+    private static final int MAX_WINDOWS = 4;
+
+    // Upper bound for a single window (must fit an int-sized mapping)
+    private static final long MAX_WINDOW_SIZE = 256L * 1024L * 1024L;
+
     // File channel backing this stream
     private final FileChannel channel;
+    // Cached file size (archives are read-only while open)
+    private final long fileSize;
+    // Size of each mapped window
+    private final long windowSize;
+    // Maximum bytes mapped at once, and bytes currently mapped
+    private final long budget;
+    private long mappedBytes = 0L;
+    // Live windows, evicted least-recently-used first
+    private final Window[] windows;
     // Current read position
     private long position = 0L;
 
+    // Statistics
+    private long useCounter = 0L;
+    private long windowHits = 0L;
+    private long windowMisses = 0L;
+
     public MappedFileInStream(FileChannel channel) {
+        this(channel, DEFAULT_MAPPING_BUDGET);
+    }
+
+    /**
+     * @param channel       file channel to read from
+     * @param mappingBudget maximum bytes mapped at once across all windows
+     */
+    public MappedFileInStream(FileChannel channel, long mappingBudget) {
         this.channel = channel;
+        try {
+            this.fileSize = channel.size();
+        } catch (IOException e) {
+            throw new RuntimeException("MappedFileInStream size failed", e);
+        }
+
+        // Split the budget into aligned windows, never larger than the file itself
+        long perWindow = Math.max(WINDOW_ALIGNMENT, Math.min(MAX_WINDOW_SIZE, mappingBudget / MAX_WINDOWS));
+        perWindow = (perWindow / WINDOW_ALIGNMENT) * WINDOW_ALIGNMENT;
+        long fileAligned = ((fileSize + WINDOW_ALIGNMENT - 1) / WINDOW_ALIGNMENT) * WINDOW_ALIGNMENT;
+        this.windowSize = Math.max(WINDOW_ALIGNMENT, Math.min(perWindow, fileAligned));
+
+        int count = (int) Math.max(1, Math.min(MAX_WINDOWS, mappingBudget / windowSize));
+        this.windows = new Window[count];
+        this.budget = Math.max(mappingBudget, windowSize);
     }
 
     /**
@@ -35,28 +89,30 @@ public final class MappedFileInStream implements IInStream {
      */
     @Override
     public int read(byte[] buffer) {
-        try {
-            int size = buffer.length;
-
-            long channelSize = channel.size();
-            long remaining = channelSize - position;
-
-            if (remaining <= 0) {
-                return 0; // EOF
-            }
+        long remaining = fileSize - position;
+        if (remaining <= 0) {
+            return 0; // EOF
+        }
 
-            int toRead = (int) Math.min(size, remaining);
+        int toRead = (int) Math.min(buffer.length, remaining);
+        int copied = 0;
 
-            ByteBuffer mapped = channel.map(
-                    FileChannel.MapMode.READ_ONLY,
-                    position,
-                    toRead
-            );
+        try {
+            // A read may straddle window boundaries
+            while (copied < toRead) {
+                Window window = windowFor(position);
+                int offsetInWindow = (int) (position - window.start);
+                int chunk = Math.min(toRead - copied, window.length - offsetInWindow);
 
-            mapped.get(buffer, 0, toRead);
-            position += toRead;
+                // Copy through a duplicate so the window's own position never moves
+                ByteBuffer dup = window.buffer.duplicate();
+                dup.position(offsetInWindow);
+                dup.get(buffer, copied, chunk);
 
-            return toRead;
+                copied += chunk;
+                position += chunk;
+            }
+            return copied;
 
         } catch (IOException e) {
             // MUST NOT throw IOException here
@@ -73,37 +129,195 @@ public final class MappedFileInStream implements IInStream {
      */
     @Override
     public long seek(long offset, int origin) {
-        try {
-            switch (origin) {
-                case IInStream.SEEK_SET:
-                    position = offset;
-                    break;
-
-                case IInStream.SEEK_CUR:
-                    position += offset;
-                    break;
-
-                case IInStream.SEEK_END:
-                    position = channel.size() + offset;
-                    break;
-            }
-            return position;
+        switch (origin) {
+            case IInStream.SEEK_SET:
+                position = offset;
+                break;
 
-        } catch (IOException e) {
-            throw new RuntimeException("MappedFileInStream seek failed", e);
+            case IInStream.SEEK_CUR:
+                position += offset;
+                break;
+
+            case IInStream.SEEK_END:
+                position = fileSize + offset;
+                break;
         }
+        return position;
+    }
+
+    /**
+     * Returns a read-only view of a file region, without copying it unless
+     * the region is larger than the whole mapping budget.
+     * Served from a live window when the region fits inside one, otherwise
+     * from a window aligned around it. Safe to call from any thread.
+     *
+     * @param offset file offset of the region
+     * @param length region length in bytes
+     */
+    public ByteBuffer slice(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > fileSize) {
+            throw new IOException("Region out of bounds: " + offset + "+" + length);
+        }
+        if (length == 0) return ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+        synchronized (this) {
+            Window window;
+            long start = (offset / windowSize) * windowSize;
+            if (offset + length <= start + windowSize) {
+                window = windowFor(offset, Math.max(1, length));
+            } else {
+                window = spanningWindow(offset, length);
+                if (window == null) return copyOf(offset, length);
+            }
+            ByteBuffer view = window.buffer.duplicate();
+            view.position((int) (offset - window.start));
+            view.limit((int) (offset - window.start) + length);
+            return view.slice().asReadOnlyBuffer();
+        }
+    }
+
+    // Returns the cached size of the underlying file.
+    public long getSize() {
+        return fileSize;
+    }
+
+    // Number of reads served from an already mapped window.
+    public long getWindowHits() {
+        return windowHits;
+    }
+
+    // Number of reads that required a new mapping.
+    public long getWindowMisses() {
+        return windowMisses;
     }
 
     /**
      * Closes the underlying FileChannel.
      */
     @Override
-    public void close() {
+    public synchronized void close() {
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = null;
+        }
+        mappedBytes = 0L;
         try {
             channel.close();
         } catch (IOException ignored) {
         }
     }
-}
 
+    // Finds (or maps) the window containing the given file offset.
+    private Window windowFor(long offset) throws IOException {
+        return windowFor(offset, 1);
+    }
+
+    // Finds (or maps) a window containing [offset, offset + length), length fitting a regular window.
+    private synchronized Window windowFor(long offset, int length) throws IOException {
+        useCounter++;
+
+        for (Window w : windows) {
+            if (w != null && offset >= w.start && offset + length <= w.start + w.length) {
+                w.lastUse = useCounter;
+                windowHits++;
+                return w;
+            }
+        }
+
+        windowMisses++;
+        int victim = leastRecentlyUsed();
 
+        long start = (offset / windowSize) * windowSize;
+        return mapWindow(victim, start, (int) Math.min(windowSize, fileSize - start));
+    }
+
+    // Window holding a region that straddles the regular windows, null if it can't fit the budget
+    private Window spanningWindow(long offset, int length) throws IOException {
+        useCounter++;
+        for (Window w : windows) {
+            if (w != null && offset >= w.start && offset + length <= w.start + w.length) {
+                w.lastUse = useCounter;
+                windowHits++;
+                return w;
+            }
+        }
+
+        long start = (offset / WINDOW_ALIGNMENT) * WINDOW_ALIGNMENT;
+        long end = Math.min(fileSize, ((offset + length + WINDOW_ALIGNMENT - 1) / WINDOW_ALIGNMENT) * WINDOW_ALIGNMENT);
+        if (end - start > budget || end - start > Integer.MAX_VALUE) return null;
+
+        windowMisses++;
+        return mapWindow(leastRecentlyUsed(), start, (int) (end - start));
+    }
+
+    // Maps into the given slot, evicting least recently used windows until it fits the budget
+    private Window mapWindow(int slot, long start, int length) throws IOException {
+        evict(slot);
+        while (mappedBytes + length > budget) {
+            int victim = oldestMapped();
+            if (victim < 0) break;
+            evict(victim);
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        Window window = new Window(start, length, buffer);
+        window.lastUse = useCounter;
+        windows[slot] = window;
+        mappedBytes += length;
+        return window;
+    }
+
+    // Previous mapping becomes unreachable
+    private void evict(int slot) {
+        if (windows[slot] == null) return;
+        mappedBytes -= windows[slot].length;
+        windows[slot] = null;
+    }
+
+    // An empty slot, else the least recently used window
+    private int leastRecentlyUsed() {
+        int victim = 0;
+        for (int i = 0; i < windows.length; i++) {
+            if (windows[i] == null) return i;
+            if (windows[i].lastUse < windows[victim].lastUse) victim = i;
+        }
+        return victim;
+    }
+
+    private int oldestMapped() {
+        int victim = -1;
+        for (int i = 0; i < windows.length; i++) {
+            if (windows[i] != null && (victim < 0 || windows[i].lastUse < windows[victim].lastUse)) victim = i;
+        }
+        return victim;
+    }
+
+    // Region larger than the budget: copied through the windows (rare, e.g. a tiny budget)
+    private ByteBuffer copyOf(long offset, int length) throws IOException {
+        byte[] copy = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            Window window = windowFor(offset + copied);
+            int offsetInWindow = (int) (offset + copied - window.start);
+            int chunk = Math.min(length - copied, window.length - offsetInWindow);
+            ByteBuffer dup = window.buffer.duplicate();
+            dup.position(offsetInWindow);
+            dup.get(copy, copied, chunk);
+            copied += chunk;
+        }
+        return ByteBuffer.wrap(copy).asReadOnlyBuffer();
+    }
+
+    // A single mapped region of the file.
+    private static final class Window {
+        final long start;
+        final int length;
+        final MappedByteBuffer buffer;
+        long lastUse;
+
+        Window(long start, int length, MappedByteBuffer buffer) {
+            this.start = start;
+            this.length = length;
+            this.buffer = buffer;
+        }
+    }
+}
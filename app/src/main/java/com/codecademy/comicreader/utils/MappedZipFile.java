@@ -0,0 +1,355 @@
+package com.codecademy.comicreader.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * MappedZipFile - random-access ZIP reader over a memory-mapped file.
+ * The central directory is parsed once; each entry's data is then
+ * located through its local header without any JNI round-trips.
+ * - STORED entries are exposed as zero-copy ByteBuffer views
+ * - DEFLATED entries are inflated with a pooled Inflater
+ * - Anything else (encrypted, LZMA, bzip2...) is reported as unsupported
+ *   so callers can fall back to 7-Zip
+ * Thread-safe: entries are immutable and all reads are position-independent.
+ */
+public final class MappedZipFile {
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int EOCD_MIN_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    // Name and comment are UTF-8 (bit 11), else the DOS code page
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final Charset CP437 = cp437();
+
+    private static final int INFLATE_CHUNK = 64 * 1024;
+
+    private final MappedFileInStream source;
+    private final List<Entry> entries;
+
+    /**
+     * Parses the central directory.
+     *
+     * @param source mapped archive file
+     * @throws IOException if the file is not a readable ZIP archive
+     */
+    public MappedZipFile(MappedFileInStream source) throws IOException {
+        this.source = source;
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    // True if the entry can be read without 7-Zip.
+    public boolean isSupported(Entry entry) {
+        if (entry.isEncrypted()) return false;
+        return entry.method == METHOD_STORED || entry.method == METHOD_DEFLATED;
+    }
+
+    /**
+     * Returns the data of a STORED entry as a read-only view of the mapping.
+     */
+    public ByteBuffer getStoredData(Entry entry) throws IOException {
+        if (entry.method != METHOD_STORED) {
+            throw new IOException("Entry is not stored: " + entry.name);
+        }
+        return source.slice(dataOffset(entry), toIntSize(entry.compressedSize));
+    }
+
+    /**
+     * Inflates a DEFLATED entry into a new array of exactly entry.getSize() bytes.
+     */
+    public byte[] inflate(Entry entry) throws IOException {
+        byte[] out = new byte[toIntSize(entry.size)];
+        inflate(entry, out);
+        return out;
+    }
+
+    /**
+     * Inflates a DEFLATED entry into the start of a caller-owned (e.g. pooled)
+     * array, which must hold at least entry.getSize() bytes.
+     *
+     * @return number of bytes written (= entry.getSize())
+     */
+    public int inflate(Entry entry, byte[] out) throws IOException {
+        if (entry.method != METHOD_DEFLATED) {
+            throw new IOException("Entry is not deflated: " + entry.name);
+        }
+
+        int size = toIntSize(entry.size);
+        if (out.length < size) throw new IOException("Buffer too small for " + entry.name);
+        ByteBuffer compressed = source.slice(dataOffset(entry), toIntSize(entry.compressedSize));
+
+        Inflater inflater = InflaterPool.obtain();
+        try {
+            byte[] chunk = new byte[Math.min(INFLATE_CHUNK, Math.max(1, compressed.remaining()))];
+            int written = 0;
+            boolean paddedInput = false;
+
+            while (written < size) {
+                if (inflater.needsInput()) {
+                    if (!compressed.hasRemaining()) {
+                        // nowrap mode may need one dummy byte to flush the last block
+                        if (paddedInput) throw new IOException("Truncated entry: " + entry.name);
+                        paddedInput = true;
+                        inflater.setInput(new byte[1]);
+                        continue;
+                    }
+                    int n = Math.min(chunk.length, compressed.remaining());
+                    compressed.get(chunk, 0, n);
+                    inflater.setInput(chunk, 0, n);
+                }
+
+                int n = inflater.inflate(out, written, size - written);
+                if (n == 0 && (inflater.finished() || inflater.needsDictionary())) break;
+                written += n;
+            }
+
+            if (written != size) {
+                throw new IOException("Size mismatch for " + entry.name + ": " + written + "/" + size);
+            }
+            return written;
+
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt deflate data: " + entry.name, e);
+        } finally {
+            InflaterPool.recycle(inflater);
+        }
+    }
+
+    // ---------- Central directory ----------
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long fileSize = source.getSize();
+        if (fileSize < EOCD_MIN_SIZE) throw new IOException("Not a ZIP file");
+
+        // EOCD sits in the last 22 bytes + optional comment
+        int tailSize = (int) Math.min(fileSize, EOCD_MIN_SIZE + MAX_COMMENT_SIZE);
+        long tailStart = fileSize - tailSize;
+        ByteBuffer tail = littleEndian(source.slice(tailStart, tailSize));
+
+        // The signature may also appear inside the comment: prefer the record whose
+        // comment length ends exactly at the end of the file, else the last one seen
+        int eocd = -1;
+        for (int i = tailSize - EOCD_MIN_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) != EOCD_SIGNATURE) continue;
+            if (eocd < 0) eocd = i;
+            if (i + EOCD_MIN_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tailSize) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) throw new IOException("End of central directory not found");
+
+        long count = tail.getShort(eocd + 10) & 0xFFFFL;
+        long cdSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cdOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+
+        // ZIP64: real values live in the ZIP64 end record
+        if (count == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+            long locatorPos = tailStart + eocd - ZIP64_LOCATOR_SIZE;
+            if (locatorPos >= 0) {
+                ByteBuffer locator = littleEndian(source.slice(locatorPos, ZIP64_LOCATOR_SIZE));
+                if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                    long zip64Pos = locator.getLong(8);
+                    ByteBuffer zip64 = littleEndian(source.slice(zip64Pos, 56));
+                    if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                        throw new IOException("Corrupt ZIP64 end record");
+                    }
+                    count = zip64.getLong(32);
+                    cdSize = zip64.getLong(40);
+                    cdOffset = zip64.getLong(48);
+                }
+            }
+        }
+
+        if (cdOffset + cdSize > fileSize || cdSize > Integer.MAX_VALUE) {
+            throw new IOException("Central directory out of bounds");
+        }
+
+        ByteBuffer cd = littleEndian(source.slice(cdOffset, (int) cdSize));
+        List<Entry> result = new ArrayList<>((int) Math.min(count, 65536));
+
+        int pos = 0;
+        while (pos + 46 <= cd.limit() && cd.getInt(pos) == CENTRAL_SIGNATURE) {
+            int flags = cd.getShort(pos + 8) & 0xFFFF;
+            int method = cd.getShort(pos + 10) & 0xFFFF;
+            long compressedSize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLen = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLen = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLen = cd.getShort(pos + 32) & 0xFFFF;
+            long localOffset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+
+            int nameStart = pos + 46;
+            if (nameStart + nameLen + extraLen > cd.limit()) break;
+
+            byte[] nameBytes = new byte[nameLen];
+            cd.position(nameStart);
+            cd.get(nameBytes);
+            // Same decoding as 7-Zip, so names sort the same with either engine
+            String name = new String(nameBytes, (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : CP437);
+
+            // ZIP64 extra field overrides saturated 32-bit values, in this order
+            int extra = nameStart + nameLen;
+            int extraEnd = extra + extraLen;
+            while (extra + 4 <= extraEnd) {
+                int id = cd.getShort(extra) & 0xFFFF;
+                int len = cd.getShort(extra + 2) & 0xFFFF;
+                int field = extra + 4;
+                int fieldEnd = field + len;
+                // Malformed: the sub-field runs past the extra field
+                if (fieldEnd > extraEnd) break;
+                if (id == ZIP64_EXTRA_ID) {
+                    if (size == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        size = cd.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        compressedSize = cd.getLong(field);
+                        field += 8;
+                    }
+                    if (localOffset == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        localOffset = cd.getLong(field);
+                    }
+                    break;
+                }
+                extra = fieldEnd;
+            }
+
+            result.add(new Entry(name, method, flags, compressedSize, size, localOffset));
+            pos = nameStart + nameLen + extraLen + commentLen;
+        }
+
+        return result;
+    }
+
+    // Latin-1 if the platform lacks it: ASCII names still decode the same
+    private static Charset cp437() {
+        try {
+            return Charset.forName("IBM437");
+        } catch (RuntimeException e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    // Resolves (and caches) where an entry's data starts, past its local header.
+    private long dataOffset(Entry entry) throws IOException {
+        long cached = entry.dataOffset;
+        if (cached >= 0) return cached;
+
+        if (entry.localHeaderOffset + LOCAL_HEADER_SIZE > source.getSize()) {
+            throw new IOException("Local header out of bounds: " + entry.name);
+        }
+
+        ByteBuffer header = littleEndian(source.slice(entry.localHeaderOffset, LOCAL_HEADER_SIZE));
+        if (header.getInt(0) != LOCAL_SIGNATURE) {
+            throw new IOException("Bad local header: " + entry.name);
+        }
+
+        int nameLen = header.getShort(26) & 0xFFFF;
+        int extraLen = header.getShort(28) & 0xFFFF;
+        long offset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLen + extraLen;
+
+        if (offset + entry.compressedSize > source.getSize()) {
+            throw new IOException("Entry data out of bounds: " + entry.name);
+        }
+
+        entry.dataOffset = offset;
+        return offset;
+    }
+
+    private static ByteBuffer littleEndian(ByteBuffer buffer) {
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int toIntSize(long size) throws IOException {
+        if (size < 0 || size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Entry too large: " + size);
+        }
+        return (int) size;
+    }
+
+    /**
+     * A single central directory record.
+     */
+    public static final class Entry {
+        private final String name;
+        private final int method;
+        private final int flags;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        // Resolved lazily from the local header, -1 until then
+        private volatile long dataOffset = -1L;
+
+        Entry(String name, int method, int flags, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() { return name; }
+        public int getMethod() { return method; }
+        public long getCompressedSize() { return compressedSize; }
+        public long getSize() { return size; }
+        public boolean isDirectory() { return name.endsWith("/"); }
+        public boolean isEncrypted() { return (flags & FLAG_ENCRYPTED) != 0; }
+    }
+
+    /**
+     * Small pool of raw (nowrap) Inflaters, they hold native zlib state
+     * that is expensive to create and slow to finalize.
+     */
+    private static final class InflaterPool {
+        private static final int MAX_POOLED = 4;
+        private static final ArrayDeque<Inflater> pool = new ArrayDeque<>();
+
+        static Inflater obtain() {
+            synchronized (pool) {
+                Inflater inflater = pool.poll();
+                if (inflater != null) return inflater;
+            }
+            return new Inflater(true);
+        }
+
+        static void recycle(Inflater inflater) {
+            inflater.reset();
+            synchronized (pool) {
+                if (pool.size() < MAX_POOLED) {
+                    pool.push(inflater);
+                    return;
+                }
+            }
+            inflater.end();
+        }
+    }
+}
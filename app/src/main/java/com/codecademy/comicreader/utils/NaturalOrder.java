@@ -0,0 +1,204 @@
+package com.codecademy.comicreader.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * NaturalOrder - reader-friendly ordering of archive page paths.
+ * - Numbers compare by value: page2 < page10, ch9.5 < ch10
+ * - Paths compare folder by folder: Vol 2/... < Vol 10/...
+ * - Case, '_', '-' and repeated spaces are ignored
+ * - The file extension only breaks ties
+ * Keys are computed once per path, so sorting n pages costs n key builds
+ * plus cheap in-memory comparisons. Pure Java (no Android dependencies).
+ */
+public final class NaturalOrder {
+
+    private NaturalOrder() {}
+
+    /**
+     * Returns the permutation that sorts the given paths, i.e. result[0] is
+     * the position of the first page in the input list.
+     */
+    public static int[] sortedOrder(List<String> paths) {
+        int count = paths.size();
+        Key[] keys = new Key[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = new Key(paths.get(i), i);
+        }
+
+        Arrays.sort(keys);
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = keys[i].position;
+        }
+        return order;
+    }
+
+    // Compares two paths directly (builds both keys, prefer sortedOrder for lists).
+    public static int compare(String a, String b) {
+        return new Key(a, 0).compareTo(new Key(b, 0));
+    }
+
+    /**
+     * Precomputed sort key of one path.
+     */
+    public static final class Key implements Comparable<Key> {
+        private final String path;
+        private final int position;
+        // One token list per folder level; tokens are text or digit runs
+        private final Token[][] segments;
+        private final String extension;
+
+        Key(String path, int position) {
+            this.path = path;
+            this.position = position;
+
+            String normalized = path.replace('\\', '/').toLowerCase(Locale.ROOT);
+
+            // Extension of the file name (last segment) is only a tie-breaker
+            String ext = "";
+            int slash = normalized.lastIndexOf('/');
+            int dot = normalized.lastIndexOf('.');
+            if (dot > slash + 1) {
+                ext = normalized.substring(dot + 1);
+                normalized = normalized.substring(0, dot);
+            }
+            this.extension = ext;
+
+            String[] parts = normalized.split("/");
+            List<Token[]> levels = new ArrayList<>(parts.length);
+            for (String part : parts) {
+                if (part.isEmpty()) continue;
+                levels.add(tokenize(part));
+            }
+            this.segments = levels.toArray(new Token[0][]);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int levels = Math.min(segments.length, other.segments.length);
+            for (int i = 0; i < levels; i++) {
+                int c = compareSegments(segments[i], other.segments[i]);
+                if (c != 0) return c;
+            }
+            if (segments.length != other.segments.length) {
+                return Integer.compare(segments.length, other.segments.length);
+            }
+
+            int c = extension.compareTo(other.extension);
+            if (c != 0) return c;
+            return path.compareTo(other.path);
+        }
+
+        private static int compareSegments(Token[] a, Token[] b) {
+            int n = Math.min(a.length, b.length);
+            for (int i = 0; i < n; i++) {
+                int c = a[i].compareTo(b[i]);
+                if (c != 0) return c;
+            }
+            return Integer.compare(a.length, b.length);
+        }
+
+        // Splits a path segment into alternating text and number tokens
+        private static Token[] tokenize(String segment) {
+            List<Token> tokens = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            int length = segment.length();
+            int i = 0;
+
+            while (i < length) {
+                char ch = segment.charAt(i);
+
+                if (isDigit(ch)) {
+                    if (text.length() > 0) {
+                        tokens.add(Token.text(text.toString()));
+                        text.setLength(0);
+                    }
+
+                    int start = i;
+                    while (i < length && isDigit(segment.charAt(i))) i++;
+                    String whole = segment.substring(start, i);
+
+                    // Decimal part, e.g. "ch 10.5"
+                    String fraction = "";
+                    if (i + 1 < length && segment.charAt(i) == '.' && isDigit(segment.charAt(i + 1))) {
+                        int fracStart = ++i;
+                        while (i < length && isDigit(segment.charAt(i))) i++;
+                        fraction = segment.substring(fracStart, i);
+                    }
+
+                    tokens.add(Token.number(whole, fraction));
+                    continue;
+                }
+
+                if (ch == '_' || ch == '-' || Character.isWhitespace(ch)) {
+                    // Collapse separators into a single space
+                    if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') text.append(' ');
+                } else {
+                    text.append(ch);
+                }
+                i++;
+            }
+
+            if (text.length() > 0) {
+                String last = text.toString().trim();
+                if (!last.isEmpty()) tokens.add(Token.text(last));
+            }
+            return tokens.toArray(new Token[0]);
+        }
+
+        private static boolean isDigit(char ch) {
+            return ch >= '0' && ch <= '9';
+        }
+    }
+
+    /**
+     * A text run or a number (kept as digits, so any length compares exactly).
+     */
+    private static final class Token implements Comparable<Token> {
+        private final String text;      // null for numbers
+        private final String digits;    // integer part without leading zeros
+        private final String fraction;  // decimal digits after '.', may be empty
+        private final int leadingZeros;
+
+        private Token(String text, String digits, String fraction, int leadingZeros) {
+            this.text = text;
+            this.digits = digits;
+            this.fraction = fraction;
+            this.leadingZeros = leadingZeros;
+        }
+
+        static Token text(String text) {
+            return new Token(text.trim(), null, null, 0);
+        }
+
+        static Token number(String whole, String fraction) {
+            int zeros = 0;
+            while (zeros < whole.length() - 1 && whole.charAt(zeros) == '0') zeros++;
+            return new Token(null, whole.substring(zeros), fraction, zeros);
+        }
+
+        @Override
+        public int compareTo(Token other) {
+            boolean isNumber = text == null;
+            boolean otherIsNumber = other.text == null;
+
+            // Numbers sort before words ("1.jpg" < "cover.jpg")
+            if (isNumber != otherIsNumber) return isNumber ? -1 : 1;
+
+            if (!isNumber) return text.compareTo(other.text);
+
+            int c = Integer.compare(digits.length(), other.digits.length());
+            if (c != 0) return c;
+            c = digits.compareTo(other.digits);
+            if (c != 0) return c;
+            c = fraction.compareTo(other.fraction);
+            if (c != 0) return c;
+            return Integer.compare(other.leadingZeros, leadingZeros);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.codecademy.comicreader.utils;
+
+import android.os.CancellationSignal;
+
+import net.sf.sevenzipjbinding.ISequentialOutStream;
+import net.sf.sevenzipjbinding.SevenZipException;
+
+import java.io.Closeable;
+
+/**
+ * PageBuffer - extraction target backed by ByteArrayPool.
+ * Sized up front from the archive's uncompressed size (PropID.SIZE), so a
+ * page is written once into a reused array and decoded in place with
+ * decodeByteArray(getData(), 0, getLength()); no doubling, no toByteArray().
+ * close() returns the array to the pool: don't touch getData() afterwards.
+ * With a CancellationSignal, a cancelled extraction fails at the next chunk.
+ */
+public final class PageBuffer implements ISequentialOutStream, Closeable {
+
+    // Used when the archive doesn't report a size
+    private static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+    private final CancellationSignal cancel;
+    private byte[] data;
+    private int length = 0;
+
+    /**
+     * @param sizeHint expected size in bytes, or a value <= 0 if unknown
+     */
+    public PageBuffer(long sizeHint) {
+        this(sizeHint, null);
+    }
+
+    /**
+     * @param sizeHint expected size in bytes, or a value <= 0 if unknown
+     * @param cancel aborts the extraction writing into this buffer, may be null
+     */
+    public PageBuffer(long sizeHint, CancellationSignal cancel) {
+        this.cancel = cancel;
+        int capacity = sizeHint > 0 && sizeHint < Integer.MAX_VALUE - 8
+                ? (int) sizeHint : DEFAULT_CAPACITY;
+        data = ByteArrayPool.acquire(capacity);
+    }
+
+    @Override
+    public int write(byte[] chunk) throws SevenZipException {
+        // 7-Zip stops the extraction when the stream throws
+        if (cancel != null && cancel.isCanceled()) throw new SevenZipException("Extraction cancelled");
+        // Chunk boundary: background extractions yield to the visible page here
+        PriorityScheduler.checkpoint();
+        ensureCapacity(length + chunk.length);
+        System.arraycopy(chunk, 0, data, length, chunk.length);
+        length += chunk.length;
+        return chunk.length;
+    }
+
+    // Backing array, valid bytes are [0, getLength())
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    // Marks the first n bytes as filled (after writing into getData() directly).
+    public void setLength(int n) {
+        if (n < 0 || n > data.length) throw new IllegalArgumentException("Length " + n);
+        length = n;
+    }
+
+    @Override
+    public void close() {
+        ByteArrayPool.release(data);
+        data = null;
+        length = 0;
+    }
+
+    // Only hit when the size hint was missing or wrong
+    private void ensureCapacity(int needed) {
+        if (needed <= data.length) return;
+        if (needed < 0) throw new OutOfMemoryError("Page too large");
+
+        byte[] grown = ByteArrayPool.acquire(Math.max(needed, data.length * 2));
+        System.arraycopy(data, 0, grown, 0, length);
+        ByteArrayPool.release(data);
+        data = grown;
+    }
+}
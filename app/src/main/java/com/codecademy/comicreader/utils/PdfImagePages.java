@@ -0,0 +1,868 @@
+package com.codecademy.comicreader.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * PdfImagePages - finds the pages of a PDF that are one full-page JPEG.
+ * Scanned comics are usually made of such pages, and the image stream of
+ * each one (/DCTDecode) is a complete JPEG file: it can be decoded like a
+ * CBZ entry, straight from the mapped file, instead of being rasterized.
+ * Minimal parser, reading only what that takes:
+ * - cross-reference tables and streams (PDF 1.5), objects in object streams
+ * - the page tree from /Root, with inherited /Resources, /MediaBox, /Rotate
+ * - page content limited to q/Q/cm and one Do, the image covering the page
+ * - the image: DCTDecode, gray or RGB, no masks, no /Decode
+ * Any other page (text, vector art, several images) is reported as null so
+ * the caller renders it normally. Thread-safe once parsed.
+ */
+public final class PdfImagePages {
+
+    // Tail of the file searched for "startxref"
+    private static final int TAIL_SIZE = 1024;
+
+    // Bytes mapped at a time while parsing objects (stream data isn't parsed)
+    private static final int OBJECT_WINDOW = 64 * 1024;
+
+    // Content of an image-only page is a single short line; more means drawing
+    private static final int MAX_CONTENT_SIZE = 4 * 1024;
+
+    // Cross-reference and object streams are inflated whole
+    private static final int MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+
+    // The image must cover the page box to within this fraction
+    private static final float COVER_TOLERANCE = 0.01f;
+
+    private static final int MAX_TREE_DEPTH = 32;
+
+    // Page tree nodes allowed per expected page (intermediate nodes included)
+    private static final int MAX_NODES_PER_PAGE = 4;
+
+    private static final String[] INHERITED = {"Resources", "MediaBox", "CropBox", "Rotate"};
+
+    private final MappedFileInStream source;
+    private final List<Image> pages = new ArrayList<>();
+
+    // Parse state, dropped once the pages are known
+    private final Map<Integer, Long> offsets = new HashMap<>();
+    private final Map<Integer, Integer> compressed = new HashMap<>();
+    private final Map<Integer, Object> objects = new HashMap<>();
+    private final Set<Integer> loadedObjectStreams = new HashSet<>();
+
+    // Page tree walk: every node once, a bounded number of them
+    private final Set<Integer> visitedNodes = new HashSet<>();
+    private final int expectedPages;
+    private final int maxNodes;
+    private int nodeCount = 0;
+
+    private PdfImagePages(MappedFileInStream source, int expectedPages) {
+        this.source = source;
+        this.expectedPages = expectedPages;
+        this.maxNodes = MAX_NODES_PER_PAGE * expectedPages + 16;
+    }
+
+    /**
+     * Reads the page tree.
+     *
+     * @param source        mapped PDF file
+     * @param expectedPages page count reported by the renderer, bounds the tree walk
+     * @return the pages, or null if none of them is a single JPEG
+     * @throws IOException if the file structure can't be read this way
+     */
+    public static PdfImagePages parse(MappedFileInStream source, int expectedPages) throws IOException {
+        PdfImagePages pdf = new PdfImagePages(source, expectedPages);
+        try {
+            Map<String, Object> trailer = pdf.readXref();
+            pdf.collectPages(trailer.get("Root") instanceof Ref
+                    ? asDict(pdf.resolve(trailer.get("Root"))).get("Pages") : null, new HashMap<>(), 0);
+        } catch (RuntimeException e) {
+            // ClassCast, NumberFormat... on malformed files
+            throw new IOException("Malformed PDF: " + e, e);
+        } finally {
+            pdf.offsets.clear();
+            pdf.compressed.clear();
+            pdf.objects.clear();
+            pdf.visitedNodes.clear();
+        }
+
+        for (Image image : pdf.pages) {
+            if (image != null) return pdf;
+        }
+        return null;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public boolean isImagePage(int page) {
+        return image(page) != null;
+    }
+
+    /**
+     * JPEG file of a page as a read-only view of the mapping, or null if the
+     * page has to be rendered.
+     */
+    public ByteBuffer getJpeg(int page) throws IOException {
+        Image image = image(page);
+        return image == null ? null : source.slice(image.offset, image.length);
+    }
+
+    // {width, height} of a page's image in pixels, or null
+    public int[] getImageSize(int page) {
+        Image image = image(page);
+        return image == null ? null : new int[]{image.width, image.height};
+    }
+
+    private Image image(int page) {
+        return page >= 0 && page < pages.size() ? pages.get(page) : null;
+    }
+
+    // ---------- Cross-reference ----------
+
+    // Newest section first, so the first entry seen for an object wins
+    private Map<String, Object> readXref() throws IOException {
+        long size = source.getSize();
+        int tailLength = (int) Math.min(TAIL_SIZE, size);
+        long tailStart = size - tailLength;
+        ByteBuffer tail = source.slice(tailStart, tailLength);
+
+        int at = lastIndexOf(tail, "startxref".getBytes(StandardCharsets.US_ASCII));
+        if (at < 0) throw new IOException("No startxref");
+        Lexer lexer = new Lexer(tailStart + at + "startxref".length());
+        long offset = asLong(lexer.next());
+
+        Map<String, Object> trailer = null;
+        Set<Long> seen = new HashSet<>();
+        while (offset >= 0 && seen.add(offset)) {
+            Map<String, Object> section = readXrefSection(offset);
+            if (trailer == null) trailer = section;
+
+            // Hybrid files: the table's objects are completed by a stream
+            Object stream = section.get("XRefStm");
+            if (stream instanceof Number && seen.add(((Number) stream).longValue())) {
+                readXrefSection(((Number) stream).longValue());
+            }
+            Object previous = section.get("Prev");
+            offset = previous instanceof Number ? ((Number) previous).longValue() : -1;
+        }
+        return trailer;
+    }
+
+    private Map<String, Object> readXrefSection(long offset) throws IOException {
+        Lexer lexer = new Lexer(offset);
+        if (isKeyword(lexer.next(), "xref")) return readXrefTable(lexer);
+
+        // PDF 1.5: "n g obj << /Type /XRef ... >> stream"
+        Object xref = readObjectAt(offset);
+        if (!(xref instanceof Stream)) throw new IOException("No xref at " + offset);
+        return readXrefStream((Stream) xref);
+    }
+
+    private Map<String, Object> readXrefTable(Lexer lexer) throws IOException {
+        while (true) {
+            Object token = lexer.next();
+            if (isKeyword(token, "trailer")) return asDict(parseObject(lexer));
+
+            int start = asInt(token);
+            int count = asInt(lexer.next());
+            for (int i = 0; i < count; i++) {
+                long offset = asLong(lexer.next());
+                lexer.next(); // generation
+                if (isKeyword(lexer.next(), "n")) addOffset(start + i, offset);
+            }
+        }
+    }
+
+    private Map<String, Object> readXrefStream(Stream xref) throws IOException {
+        List<Object> widths = asList(xref.dict.get("W"));
+        int w0 = asInt(widths.get(0));
+        int w1 = asInt(widths.get(1));
+        int w2 = asInt(widths.get(2));
+        int rowLength = w0 + w1 + w2;
+
+        List<Object> index = xref.dict.containsKey("Index")
+                ? asList(xref.dict.get("Index"))
+                : Arrays.asList(0L, xref.dict.get("Size"));
+        byte[] data = streamData(xref, MAX_INFLATED_SIZE);
+
+        int pos = 0;
+        for (int i = 0; i + 1 < index.size(); i += 2) {
+            int start = asInt(index.get(i));
+            int count = asInt(index.get(i + 1));
+            for (int n = 0; n < count && pos + rowLength <= data.length; n++, pos += rowLength) {
+                // A missing type field means type 1
+                long type = w0 == 0 ? 1 : field(data, pos, w0);
+                long value = field(data, pos + w0, w1);
+                if (type == 1) addOffset(start + n, value);
+                else if (type == 2 && !known(start + n)) compressed.put(start + n, (int) value);
+            }
+        }
+        return xref.dict;
+    }
+
+    private void addOffset(int number, long offset) {
+        if (!known(number)) offsets.put(number, offset);
+    }
+
+    private boolean known(int number) {
+        return offsets.containsKey(number) || compressed.containsKey(number);
+    }
+
+    private static long field(byte[] data, int pos, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) value = (value << 8) | (data[pos + i] & 0xFF);
+        return value;
+    }
+
+    // ---------- Objects ----------
+
+    private Object resolve(Object value) throws IOException {
+        return value instanceof Ref ? getObject(((Ref) value).number) : value;
+    }
+
+    private Object getObject(int number) throws IOException {
+        if (objects.containsKey(number)) return objects.get(number);
+
+        Long offset = offsets.get(number);
+        if (offset != null) {
+            Object value = readObjectAt(offset);
+            objects.put(number, value);
+            return value;
+        }
+
+        Integer stream = compressed.get(number);
+        if (stream != null && loadedObjectStreams.add(stream)) loadObjectStream(stream);
+        return objects.get(number);
+    }
+
+    // "n g obj <value> [stream]"
+    private Object readObjectAt(long offset) throws IOException {
+        Lexer lexer = new Lexer(offset);
+        asInt(lexer.next());
+        asInt(lexer.next());
+        if (!isKeyword(lexer.next(), "obj")) throw new IOException("No object at " + offset);
+
+        Object value = parseObject(lexer);
+        if (value instanceof Map && isKeyword(lexer.next(), "stream")) {
+            // Data starts after the EOL that follows the keyword
+            long data = lexer.position();
+            if (lexer.byteAt(data) == '\r') data++;
+            if (lexer.byteAt(data) == '\n') data++;
+            return new Stream(asDict(value), data);
+        }
+        return value;
+    }
+
+    // Parses every object of an object stream (/N pairs of "number offset", then the objects)
+    private void loadObjectStream(int number) throws IOException {
+        Object value = getObject(number);
+        if (!(value instanceof Stream)) return;
+        Stream stream = (Stream) value;
+
+        int count = asInt(stream.dict.get("N"));
+        int first = asInt(stream.dict.get("First"));
+        byte[] data = streamData(stream, MAX_INFLATED_SIZE);
+
+        Lexer header = new Lexer(data, 0);
+        for (int i = 0; i < count; i++) {
+            int objectNumber = asInt(header.next());
+            int offset = asInt(header.next());
+            // Newer revisions may have moved the object elsewhere
+            Integer owner = compressed.get(objectNumber);
+            if (owner == null || owner != number || objects.containsKey(objectNumber)) continue;
+            objects.put(objectNumber, parseObject(new Lexer(data, first + offset)));
+        }
+    }
+
+    private Object parseObject(Lexer lexer) throws IOException {
+        return parseObject(lexer, lexer.next());
+    }
+
+    private Object parseObject(Lexer lexer, Object token) throws IOException {
+        if (token == null) throw new IOException("Unexpected end of data");
+
+        if (token instanceof Keyword) {
+            switch (((Keyword) token).value) {
+                case "<<": {
+                    Map<String, Object> dict = new HashMap<>();
+                    while (true) {
+                        Object key = lexer.next();
+                        if (isKeyword(key, ">>")) return dict;
+                        if (!(key instanceof String)) throw new IOException("Bad dictionary key");
+                        dict.put((String) key, parseObject(lexer));
+                    }
+                }
+                case "[": {
+                    List<Object> list = new ArrayList<>();
+                    while (true) {
+                        Object item = lexer.next();
+                        if (isKeyword(item, "]")) return list;
+                        list.add(parseObject(lexer, item));
+                    }
+                }
+                case "true": return Boolean.TRUE;
+                case "false": return Boolean.FALSE;
+                case "null": return null;
+                default: return token;
+            }
+        }
+
+        if (token instanceof Long) {
+            // "n g R" reference
+            long mark = lexer.position();
+            if (lexer.next() instanceof Long && isKeyword(lexer.next(), "R")) {
+                return new Ref(((Long) token).intValue());
+            }
+            lexer.seek(mark);
+        }
+        return token;
+    }
+
+    // Decoded stream data: unfiltered or FlateDecode (with PNG predictors)
+    private byte[] streamData(Stream stream, int maxSize) throws IOException {
+        long length = asLong(resolve(stream.dict.get("Length")));
+        if (length < 0 || stream.offset + length > source.getSize()) throw new IOException("Bad stream length");
+        ByteBuffer raw = source.slice(stream.offset, (int) Math.min(length, Integer.MAX_VALUE));
+
+        Object filter = resolve(stream.dict.get("Filter"));
+        Object params = resolve(stream.dict.get("DecodeParms"));
+        if (filter instanceof List) {
+            List<?> filters = (List<?>) filter;
+            if (filters.size() > 1) throw new IOException("Filter chain");
+            filter = filters.isEmpty() ? null : resolve(filters.get(0));
+            if (params instanceof List) params = ((List<?>) params).isEmpty() ? null : resolve(((List<?>) params).get(0));
+        }
+
+        byte[] data;
+        if (filter == null) {
+            if (length > maxSize) throw new IOException("Stream too large");
+            data = new byte[(int) length];
+            raw.get(data);
+        } else if ("FlateDecode".equals(filter)) {
+            data = inflate(raw, maxSize);
+        } else {
+            throw new IOException("Unsupported filter " + filter);
+        }
+        return params instanceof Map ? unpredict(data, asDict(params)) : data;
+    }
+
+    private static byte[] inflate(ByteBuffer compressed, int maxSize) throws IOException {
+        byte[] input = new byte[compressed.remaining()];
+        compressed.get(input);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxSize, input.length * 4 + 64));
+            byte[] chunk = new byte[8 * 1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break; // truncated, keep what we have
+                out.write(chunk, 0, n);
+                if (out.size() > maxSize) throw new IOException("Stream too large");
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt stream", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Reverses the PNG row filters of /Predictor >= 10
+    private static byte[] unpredict(byte[] data, Map<String, Object> params) throws IOException {
+        int predictor = asInt(params.get("Predictor"), 1);
+        if (predictor == 1) return data;
+        if (predictor < 10) throw new IOException("Unsupported predictor " + predictor);
+
+        int colors = asInt(params.get("Colors"), 1);
+        int bits = asInt(params.get("BitsPerComponent"), 8);
+        int columns = asInt(params.get("Columns"), 1);
+        int bpp = Math.max(1, colors * bits / 8);
+        int rowLength = (columns * colors * bits + 7) / 8;
+        int rows = data.length / (rowLength + 1);
+
+        byte[] out = new byte[rows * rowLength];
+        for (int row = 0; row < rows; row++) {
+            int type = data[row * (rowLength + 1)] & 0xFF;
+            int in = row * (rowLength + 1) + 1;
+            int at = row * rowLength;
+            for (int i = 0; i < rowLength; i++) {
+                int x = data[in + i] & 0xFF;
+                int left = i >= bpp ? out[at + i - bpp] & 0xFF : 0;
+                int up = row > 0 ? out[at + i - rowLength] & 0xFF : 0;
+                int upLeft = row > 0 && i >= bpp ? out[at + i - rowLength - bpp] & 0xFF : 0;
+                switch (type) {
+                    case 0: break;
+                    case 1: x += left; break;
+                    case 2: x += up; break;
+                    case 3: x += (left + up) / 2; break;
+                    case 4: x += paeth(left, up, upLeft); break;
+                    default: throw new IOException("Bad PNG filter " + type);
+                }
+                out[at + i] = (byte) x;
+            }
+        }
+        return out;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int p = left + up - upLeft;
+        int pa = Math.abs(p - left);
+        int pb = Math.abs(p - up);
+        int pc = Math.abs(p - upLeft);
+        if (pa <= pb && pa <= pc) return left;
+        return pb <= pc ? up : upLeft;
+    }
+
+    // ---------- Pages ----------
+
+    private void collectPages(Object nodeRef, Map<String, Object> inherited, int depth) throws IOException {
+        if (depth > MAX_TREE_DEPTH) throw new IOException("Page tree too deep");
+        // Kids pointing back at an ancestor, or listed twice, would make the walk exponential
+        if (nodeRef instanceof Ref && !visitedNodes.add(((Ref) nodeRef).number)) {
+            throw new IOException("Page tree node " + ((Ref) nodeRef).number + " reached twice");
+        }
+        if (++nodeCount > maxNodes) throw new IOException("Page tree larger than " + expectedPages + " pages");
+        Map<String, Object> node = asDict(resolve(nodeRef));
+
+        Map<String, Object> attributes = new HashMap<>(inherited);
+        for (String key : INHERITED) {
+            if (node.containsKey(key)) attributes.put(key, node.get(key));
+        }
+
+        Object kids = resolve(node.get("Kids"));
+        if (kids instanceof List) {
+            for (Object kid : (List<?>) kids) collectPages(kid, attributes, depth + 1);
+        } else {
+            if (pages.size() >= expectedPages) throw new IOException("More pages than the renderer reports");
+            pages.add(imageOf(node, attributes));
+        }
+    }
+
+    // The page's JPEG if that's all the page shows, else null
+    private Image imageOf(Map<String, Object> page, Map<String, Object> attributes) {
+        try {
+            if (asInt(resolve(attributes.get("Rotate")), 0) % 360 != 0) return null;
+
+            float[] box = rect(resolve(attributes.get("MediaBox")));
+            Object crop = resolve(attributes.get("CropBox"));
+            if (crop != null && !Arrays.equals(box, rect(crop))) return null;
+
+            byte[] content = contentOf(resolve(page.get("Contents")));
+            String name = content != null ? drawnImage(content, box) : null;
+            if (name == null) return null;
+
+            Map<String, Object> resources = asDict(resolve(attributes.get("Resources")));
+            Object image = resolve(asDict(resolve(resources.get("XObject"))).get(name));
+            return image instanceof Stream ? jpegOf((Stream) image) : null;
+
+        } catch (IOException | RuntimeException e) {
+            // Anything unexpected: render the page
+            return null;
+        }
+    }
+
+    // Page content (concatenated if split), null if too large for an image-only page
+    private byte[] contentOf(Object contents) throws IOException {
+        List<Object> parts = contents instanceof List ? asList(contents) : Arrays.asList(contents);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Object part : parts) {
+            Object stream = resolve(part);
+            if (!(stream instanceof Stream)) return null;
+            if (asLong(resolve(((Stream) stream).dict.get("Length"))) > MAX_CONTENT_SIZE) return null;
+            out.write(streamData((Stream) stream, MAX_CONTENT_SIZE));
+            out.write(' ');
+            if (out.size() > MAX_CONTENT_SIZE) return null;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Name of the one image the content draws over the whole box, or null if
+     * it does anything else (only q, Q, cm and a single Do are accepted).
+     */
+    private String drawnImage(byte[] content, float[] box) throws IOException {
+        float[] ctm = {1, 0, 0, 1, 0, 0};
+        Deque<float[]> saved = new ArrayDeque<>();
+        List<Object> operands = new ArrayList<>();
+        String drawn = null;
+
+        Lexer lexer = new Lexer(content, 0);
+        Object token;
+        while ((token = lexer.next()) != null) {
+            if (token instanceof Number || token instanceof String) {
+                operands.add(token);
+                continue;
+            }
+            if (!(token instanceof Keyword)) return null;
+
+            switch (((Keyword) token).value) {
+                case "q":
+                    saved.push(ctm.clone());
+                    break;
+                case "Q":
+                    if (saved.isEmpty()) return null;
+                    ctm = saved.pop();
+                    break;
+                case "cm":
+                    if (operands.size() != 6) return null;
+                    float[] m = new float[6];
+                    for (int i = 0; i < 6; i++) m[i] = ((Number) operands.get(i)).floatValue();
+                    ctm = multiply(m, ctm);
+                    break;
+                case "Do":
+                    if (drawn != null || operands.size() != 1 || !(operands.get(0) instanceof String)) return null;
+                    if (!covers(ctm, box)) return null;
+                    drawn = (String) operands.get(0);
+                    break;
+                default:
+                    // Paths, text, color, another graphics state...
+                    return null;
+            }
+            operands.clear();
+        }
+        return drawn;
+    }
+
+    // Image space is the unit square, the CTM must map it onto the box
+    private static boolean covers(float[] ctm, float[] box) {
+        float width = box[2] - box[0];
+        float height = box[3] - box[1];
+        float dx = COVER_TOLERANCE * width;
+        float dy = COVER_TOLERANCE * height;
+        return Math.abs(ctm[1]) <= dy && Math.abs(ctm[2]) <= dx
+                && Math.abs(ctm[0] - width) <= dx && Math.abs(ctm[3] - height) <= dy
+                && Math.abs(ctm[4] - box[0]) <= dx && Math.abs(ctm[5] - box[1]) <= dy;
+    }
+
+    // m x ctm, as "cm" applies it
+    private static float[] multiply(float[] m, float[] ctm) {
+        return new float[]{
+                m[0] * ctm[0] + m[1] * ctm[2],
+                m[0] * ctm[1] + m[1] * ctm[3],
+                m[2] * ctm[0] + m[3] * ctm[2],
+                m[2] * ctm[1] + m[3] * ctm[3],
+                m[4] * ctm[0] + m[5] * ctm[2] + ctm[4],
+                m[4] * ctm[1] + m[5] * ctm[3] + ctm[5]};
+    }
+
+    private Image jpegOf(Stream image) throws IOException {
+        Map<String, Object> dict = image.dict;
+        if (!"Image".equals(resolve(dict.get("Subtype")))) return null;
+        if (!isDctOnly(resolve(dict.get("Filter")))) return null;
+        // Transparency or inverted samples: not what the plain JPEG shows
+        if (dict.containsKey("SMask") || dict.containsKey("Mask") || dict.containsKey("Decode")) return null;
+        if (Boolean.TRUE.equals(resolve(dict.get("ImageMask")))) return null;
+        if (!isGrayOrRgb(resolve(dict.get("ColorSpace")))) return null;
+
+        int width = asInt(resolve(dict.get("Width")));
+        int height = asInt(resolve(dict.get("Height")));
+        long length = asLong(resolve(dict.get("Length")));
+        if (width <= 0 || height <= 0 || length < 4 || length > Integer.MAX_VALUE
+                || image.offset + length > source.getSize()) return null;
+
+        // JPEG start-of-image marker
+        ByteBuffer head = source.slice(image.offset, 2);
+        if ((head.get(0) & 0xFF) != 0xFF || (head.get(1) & 0xFF) != 0xD8) return null;
+        return new Image(image.offset, (int) length, width, height);
+    }
+
+    private boolean isDctOnly(Object filter) throws IOException {
+        if (filter instanceof List && ((List<?>) filter).size() == 1) filter = resolve(((List<?>) filter).get(0));
+        return "DCTDecode".equals(filter);
+    }
+
+    // CMYK JPEGs (often Adobe-inverted) are left to PdfRenderer
+    private boolean isGrayOrRgb(Object colorSpace) throws IOException {
+        if ("DeviceGray".equals(colorSpace) || "DeviceRGB".equals(colorSpace)) return true;
+        if (colorSpace instanceof List && ((List<?>) colorSpace).size() == 2
+                && "ICCBased".equals(((List<?>) colorSpace).get(0))) {
+            Object profile = resolve(((List<?>) colorSpace).get(1));
+            if (!(profile instanceof Stream)) return false;
+            int components = asInt(resolve(((Stream) profile).dict.get("N")), 0);
+            return components == 1 || components == 3;
+        }
+        return false;
+    }
+
+    private static float[] rect(Object value) throws IOException {
+        List<Object> list = asList(value);
+        if (list.size() != 4) throw new IOException("Bad rectangle");
+        float x0 = asFloat(list.get(0));
+        float y0 = asFloat(list.get(1));
+        float x1 = asFloat(list.get(2));
+        float y1 = asFloat(list.get(3));
+        return new float[]{Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1)};
+    }
+
+    // ---------- Value helpers ----------
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asDict(Object value) throws IOException {
+        if (value instanceof Stream) return ((Stream) value).dict;
+        if (!(value instanceof Map)) throw new IOException("Expected a dictionary");
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value) throws IOException {
+        if (!(value instanceof List)) throw new IOException("Expected an array");
+        return (List<Object>) value;
+    }
+
+    private static long asLong(Object value) throws IOException {
+        if (!(value instanceof Number)) throw new IOException("Expected a number");
+        return ((Number) value).longValue();
+    }
+
+    private static int asInt(Object value) throws IOException {
+        return (int) asLong(value);
+    }
+
+    private static int asInt(Object value, int fallback) throws IOException {
+        return value == null ? fallback : asInt(value);
+    }
+
+    private static float asFloat(Object value) throws IOException {
+        if (!(value instanceof Number)) throw new IOException("Expected a number");
+        return ((Number) value).floatValue();
+    }
+
+    private static boolean isKeyword(Object token, String value) {
+        return token instanceof Keyword && ((Keyword) token).value.equals(value);
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, byte[] pattern) {
+        for (int i = buffer.limit() - pattern.length; i >= 0; i--) {
+            int j = 0;
+            while (j < pattern.length && buffer.get(i + j) == pattern[j]) j++;
+            if (j == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    // ---------- Types ----------
+
+    // A page's JPEG in the file
+    private static final class Image {
+        final long offset;
+        final int length;
+        final int width;
+        final int height;
+
+        Image(long offset, int length, int width, int height) {
+            this.offset = offset;
+            this.length = length;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static final class Stream {
+        final Map<String, Object> dict;
+        final long offset;
+
+        Stream(Map<String, Object> dict, long offset) {
+            this.dict = dict;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Ref {
+        final int number;
+
+        Ref(int number) {
+            this.number = number;
+        }
+    }
+
+    // Operators, true/false/null and the delimiters [ ] << >>
+    private static final class Keyword {
+        final String value;
+
+        Keyword(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Tokens of the file (read through small mappings) or of decoded data:
+     * Long/Double numbers, String names (without '/'), byte[] strings, Keywords.
+     * next() returns null at the end.
+     */
+    private final class Lexer {
+        private final boolean mapped;
+        private final long end;
+        private ByteBuffer buffer;
+        private long base = 0;
+        private long pos;
+
+        // Over the mapped file
+        Lexer(long position) {
+            this.mapped = true;
+            this.end = source.getSize();
+            this.pos = position;
+        }
+
+        // Over decoded data
+        Lexer(byte[] data, int position) {
+            this.mapped = false;
+            this.end = data.length;
+            this.buffer = ByteBuffer.wrap(data);
+            this.pos = position;
+        }
+
+        long position() {
+            return pos;
+        }
+
+        void seek(long position) {
+            pos = position;
+        }
+
+        int byteAt(long at) throws IOException {
+            if (at < 0 || at >= end) return -1;
+            if (buffer == null || at < base || at >= base + buffer.limit()) {
+                if (!mapped) return -1;
+                base = at;
+                buffer = source.slice(at, (int) Math.min(OBJECT_WINDOW, end - at));
+            }
+            return buffer.get((int) (at - base)) & 0xFF;
+        }
+
+        Object next() throws IOException {
+            skipWhitespace();
+            int c = byteAt(pos);
+            if (c < 0) return null;
+
+            switch (c) {
+                case '/':
+                    pos++;
+                    return readName();
+                case '(':
+                    return skipLiteralString();
+                case '<':
+                    if (byteAt(pos + 1) == '<') {
+                        pos += 2;
+                        return new Keyword("<<");
+                    }
+                    return skipHexString();
+                case '>':
+                    if (byteAt(pos + 1) != '>') throw new IOException("Stray '>'");
+                    pos += 2;
+                    return new Keyword(">>");
+                case '[': case ']': case '{': case '}':
+                    pos++;
+                    return new Keyword(String.valueOf((char) c));
+                default:
+                    break;
+            }
+
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.') return readNumber();
+
+            StringBuilder word = new StringBuilder();
+            while (isRegular(c = byteAt(pos))) {
+                word.append((char) c);
+                pos++;
+            }
+            if (word.length() == 0) throw new IOException("Unexpected byte " + c);
+            return new Keyword(word.toString());
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (true) {
+                int c = byteAt(pos);
+                if (c == '%') {
+                    // Comment up to the end of the line
+                    while (c >= 0 && c != '\r' && c != '\n') c = byteAt(++pos);
+                } else if (c == 0 || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == ' ') {
+                    pos++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private String readName() throws IOException {
+            StringBuilder name = new StringBuilder();
+            int c;
+            while (isRegular(c = byteAt(pos))) {
+                if (c == '#' && isHex(byteAt(pos + 1)) && isHex(byteAt(pos + 2))) {
+                    c = Character.digit(byteAt(pos + 1), 16) * 16 + Character.digit(byteAt(pos + 2), 16);
+                    pos += 2;
+                }
+                name.append((char) c);
+                pos++;
+            }
+            return name.toString();
+        }
+
+        private Number readNumber() throws IOException {
+            StringBuilder number = new StringBuilder();
+            int c;
+            while ((c = byteAt(pos)) >= 0 && ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.')) {
+                number.append((char) c);
+                pos++;
+            }
+            String text = number.toString();
+            try {
+                if (text.indexOf('.') < 0) return Long.parseLong(text);
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                // "-" or "1.2.3": treated as 0, like most readers
+                return 0L;
+            }
+        }
+
+        // Strings are never needed, only skipped
+        private byte[] skipLiteralString() throws IOException {
+            int depth = 0;
+            while (true) {
+                int c = byteAt(pos++);
+                if (c < 0) throw new IOException("Unterminated string");
+                if (c == '\\') pos++;
+                else if (c == '(') depth++;
+                else if (c == ')' && --depth == 0) return new byte[0];
+            }
+        }
+
+        private byte[] skipHexString() throws IOException {
+            while (true) {
+                int c = byteAt(pos++);
+                if (c < 0) throw new IOException("Unterminated string");
+                if (c == '>') return new byte[0];
+            }
+        }
+
+        private boolean isRegular(int c) {
+            if (c < 0) return false;
+            switch (c) {
+                case 0: case '\t': case '\n': case '\f': case '\r': case ' ':
+                case '(': case ')': case '<': case '>': case '[': case ']':
+                case '{': case '}': case '/': case '%':
+                    return false;
+                default:
+                    return true;
+            }
+        }
+
+        private boolean isHex(int c) {
+            return c >= 0 && Character.digit(c, 16) >= 0;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.codecademy.comicreader.utils;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PriorityScheduler - the app's one pool of worker threads, shared by page
+ * sources, the viewer, thumbnails and the library screens. Runs the most
+ * urgent work first within a fixed thread budget:
+ * - queued tasks run by priority class, FIFO within a class; setPriority()
+ *   moves a task when the user scrolls
+ * - one thread is kept for VISIBLE/ADJACENT work: background classes never
+ *   occupy all threads, so the visible page doesn't wait behind prefetches
+ * - threads run at a nice level per class, so the kernel favours the
+ *   foreground decode while background work runs beside it
+ * - long background tasks call checkpoint() at chunk boundaries and pause
+ *   there while foreground work waits for a thread
+ * - each task runs in a Lane (IO, DECODE, DB, SCAN) with its own share of
+ *   the threads, so e.g. a folder scan can't take all of them
+ * Work is submitted through TaskGroups: one per owner (a fragment, a page
+ * source), an ExecutorService with its own quota that cancels only its tasks.
+ */
+public final class PriorityScheduler {
+
+    private static final String TAG = "PriorityScheduler";
+
+    // Most urgent first; VISIBLE = what the user waits for on screen
+    public enum Priority {
+        VISIBLE(Process.THREAD_PRIORITY_DEFAULT),
+        ADJACENT(Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_LESS_FAVORABLE),
+        PREFETCH(Process.THREAD_PRIORITY_BACKGROUND),
+        PAGE_THUMBNAIL(Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_LESS_FAVORABLE),
+        LIBRARY_THUMBNAIL(Process.THREAD_PRIORITY_BACKGROUND + 2 * Process.THREAD_PRIORITY_LESS_FAVORABLE);
+
+        private final int threadPriority;
+
+        Priority(int threadPriority) {
+            this.threadPriority = threadPriority;
+        }
+
+        public boolean isForeground() {
+            return ordinal() <= ADJACENT.ordinal();
+        }
+    }
+
+    // Kind of work, each gets a share of the thread budget
+    public enum Lane {
+        // File reads/writes, opening comics
+        IO,
+        // Extraction + decoding of pages, tiles and thumbnails
+        DECODE,
+        // Room queries (SQLite serializes writes anyway)
+        DB,
+        // Folder scans, long and disk bound: one at a time
+        SCAN;
+
+        // Tasks of this lane that may run at once with this many threads
+        int quota(int threads) {
+            switch (this) {
+                case DECODE: return threads;
+                case SCAN: return 1;
+                default: return Math.max(1, threads / 2);
+            }
+        }
+    }
+
+    // Longest pause of a background task at one checkpoint
+    private static final long MAX_PAUSE_MS = 50L;
+
+    private static PriorityScheduler instance;
+    private static final ThreadLocal<Task> currentTask = new ThreadLocal<>();
+
+    private final int threadCount;
+    private final ArrayDeque<Task>[] queues;
+    private final int[] laneRunning = new int[Lane.values().length];
+    private int runningBackground = 0;
+
+    @SuppressWarnings("unchecked")
+    private PriorityScheduler(int threadCount) {
+        this.threadCount = threadCount;
+        queues = (ArrayDeque<Task>[]) new ArrayDeque<?>[Priority.values().length];
+        for (int i = 0; i < queues.length; i++) queues[i] = new ArrayDeque<>();
+
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(this::workLoop, "scheduler-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // IO thread budget of the device plus the thread kept for foreground work
+    public static synchronized PriorityScheduler get(Context context) {
+        if (instance == null) {
+            instance = new PriorityScheduler(SystemUtil.getRecommendedIOThreadCount(context) + 1);
+        }
+        return instance;
+    }
+
+    // Group limited by its lane's quota only
+    public TaskGroup newGroup(Lane lane, Priority defaultPriority) {
+        return new TaskGroup(lane, defaultPriority, lane.quota(threadCount));
+    }
+
+    // Group that runs at most maxRunning tasks at once (e.g. 1 = in order)
+    public TaskGroup newGroup(Lane lane, Priority defaultPriority, int maxRunning) {
+        return new TaskGroup(lane, defaultPriority, Math.max(1, Math.min(maxRunning, lane.quota(threadCount))));
+    }
+
+    /**
+     * Chunk boundary of a long task: a background task waits here (up to
+     * MAX_PAUSE_MS) while foreground tasks are queued. No-op elsewhere.
+     */
+    public static void checkpoint() {
+        Task task = currentTask.get();
+        if (task != null) task.scheduler().pauseIfPreempted(task);
+    }
+
+    // Task running on the calling thread, or null off the scheduler
+    public static Task currentTask() {
+        return currentTask.get();
+    }
+
+    private synchronized void pauseIfPreempted(Task task) {
+        long deadline = SystemClock.uptimeMillis() + MAX_PAUSE_MS;
+        while (!task.priority.isForeground() && foregroundQueued()) {
+            long left = deadline - SystemClock.uptimeMillis();
+            if (left <= 0) return;
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized Task enqueue(Task task) {
+        queues[task.priority.ordinal()].add(task);
+        notifyAll();
+        return task;
+    }
+
+    private synchronized void reprioritize(Task task, Priority priority) {
+        if (task.priority == priority || task.isDone()) return;
+
+        if (task.queued) {
+            queues[task.priority.ordinal()].remove(task);
+            queues[priority.ordinal()].add(task);
+        } else {
+            // Running: move it between the thread budgets and re-nice its thread
+            if (task.countedBackground && priority.isForeground()) {
+                task.countedBackground = false;
+                runningBackground--;
+            } else if (!task.countedBackground && !priority.isForeground()) {
+                task.countedBackground = true;
+                runningBackground++;
+            }
+            setThreadPriority(task.tid, priority);
+        }
+        task.priority = priority;
+        notifyAll();
+    }
+
+    private void workLoop() {
+        int tid = Process.myTid();
+        while (true) {
+            Task task;
+            try {
+                task = take(tid);
+            } catch (InterruptedException e) {
+                // Left over from a cancel(true), the thread keeps working
+                continue;
+            }
+
+            currentTask.set(task);
+            try {
+                task.run();
+            } finally {
+                currentTask.remove();
+                finished(task);
+                // A cancel(true) may have interrupted this thread
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private synchronized Task take(int tid) throws InterruptedException {
+        while (true) {
+            Task task = next();
+            if (task != null) {
+                task.queued = false;
+                task.tid = tid;
+                setThreadPriority(tid, task.priority);
+                return task;
+            }
+            wait();
+        }
+    }
+
+    // Most urgent queued task whose lane and group are under quota,
+    // background ones only while a thread stays free
+    private Task next() {
+        for (Priority priority : Priority.values()) {
+            if (!priority.isForeground() && runningBackground >= threadCount - 1) return null;
+
+            for (Iterator<Task> it = queues[priority.ordinal()].iterator(); it.hasNext(); ) {
+                Task task = it.next();
+                // Cancelled tasks are dropped here
+                if (task.isDone()) {
+                    it.remove();
+                    continue;
+                }
+                TaskGroup group = task.group;
+                if (laneRunning[group.lane.ordinal()] >= group.lane.quota(threadCount)
+                        || group.running >= group.maxRunning) continue;
+
+                it.remove();
+                laneRunning[group.lane.ordinal()]++;
+                group.running++;
+                if (!priority.isForeground()) {
+                    runningBackground++;
+                    task.countedBackground = true;
+                }
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void finished(Task task) {
+        if (task.countedBackground) runningBackground--;
+        task.countedBackground = false;
+        laneRunning[task.group.lane.ordinal()]--;
+        task.group.running--;
+        notifyAll();
+    }
+
+    private boolean foregroundQueued() {
+        for (Priority priority : Priority.values()) {
+            if (priority.isForeground() && !queues[priority.ordinal()].isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private static void setThreadPriority(int tid, Priority priority) {
+        try {
+            Process.setThreadPriority(tid, priority.threadPriority);
+        } catch (RuntimeException e) {
+            // Thread gone or not allowed, keep the current nice level
+        }
+    }
+
+    /**
+     * Work of one TaskGroup. Cancel to drop it while queued; a running task
+     * only stops if it checks for interruption (cancel(true)) or the
+     * CancellationSignal it was submitted with (either kind of cancel).
+     */
+    public final class Task extends FutureTask<Void> {
+
+        private final TaskGroup group;
+        private final CancellationSignal signal;
+
+        // Guarded by the scheduler
+        private Priority priority;
+        private boolean queued = true;
+        private boolean countedBackground = false;
+        private int tid = -1;
+
+        private Task(TaskGroup group, Runnable work, Priority priority, CancellationSignal signal) {
+            super(work, null);
+            this.group = group;
+            this.priority = priority;
+            this.signal = signal;
+        }
+
+        public Priority getPriority() {
+            synchronized (PriorityScheduler.this) {
+                return priority;
+            }
+        }
+
+        // Raises the priority only, e.g. when more urgent work waits for this task
+        public void boostTo(Priority priority) {
+            synchronized (PriorityScheduler.this) {
+                if (priority.ordinal() < this.priority.ordinal()) reprioritize(this, priority);
+            }
+        }
+
+        public void setPriority(Priority priority) {
+            reprioritize(this, priority);
+        }
+
+        private PriorityScheduler scheduler() {
+            return PriorityScheduler.this;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && signal != null) signal.cancel();
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            group.remove(this);
+            if (isCancelled()) return;
+            try {
+                get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Task failed", e.getCause());
+            } catch (InterruptedException ignored) {
+                // Done already, get() doesn't block
+            }
+        }
+    }
+
+    /**
+     * Tasks of one owner (a page source, the viewer, a fragment), usable as
+     * an ExecutorService. Creating one is cheap, no threads are started.
+     * shutdown() rejects new work, shutdownNow() also cancels the owner's
+     * queued and running tasks; other owners' work is untouched.
+     */
+    public final class TaskGroup extends AbstractExecutorService {
+
+        private final Lane lane;
+        private final Priority defaultPriority;
+        private final int maxRunning;
+        private final Set<Task> tasks = ConcurrentHashMap.newKeySet();
+        private volatile boolean shutdown = false;
+
+        // Guarded by the scheduler
+        private int running = 0;
+
+        private TaskGroup(Lane lane, Priority defaultPriority, int maxRunning) {
+            this.lane = lane;
+            this.defaultPriority = defaultPriority;
+            this.maxRunning = maxRunning;
+        }
+
+        public Task submit(Priority priority, Runnable work) {
+            return submit(priority, work, null);
+        }
+
+        // Cancelling the returned task also cancels signal, for work that checks it mid-way
+        public Task submit(Priority priority, Runnable work, CancellationSignal signal) {
+            if (shutdown) throw new RejectedExecutionException("Task group shut down");
+            Task task = new Task(this, work, priority, signal);
+            tasks.add(task);
+            return enqueue(task);
+        }
+
+        @Override
+        public Future<?> submit(Runnable work) {
+            return submit(defaultPriority, work);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submit(defaultPriority, command);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            for (Task task : tasks) task.cancel(true);
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && tasks.isEmpty();
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = SystemClock.uptimeMillis() + unit.toMillis(timeout);
+            while (!isTerminated()) {
+                long left = deadline - SystemClock.uptimeMillis();
+                if (left <= 0) return false;
+                wait(left);
+            }
+            return true;
+        }
+
+        private synchronized void remove(Task task) {
+            tasks.remove(task);
+            notifyAll();
+        }
+    }
+}
@@ -4,8 +4,6 @@ package com.codecademy.comicreader.utils;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.os.Build;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 
 public final class SystemUtil {
@@ -78,25 +76,76 @@ public final class SystemUtil {
     }
 
     /**
-     * Creates an ExecutorService optimized for IO work.
-     * Use this for:
-     * - Archive extraction
-     * - Image decoding
-     * - File reads/writes
+     * Returns how many bytes of an archive may be memory-mapped at once
+     * by a single MappedFileInStream.
+     * Low-RAM (often 32-bit) devices get a smaller budget to limit
+     * address-space pressure from mappings the GC has not released yet.
+     */
+    public static long getRecommendedMappingBudget(Context context) {
+        int ram = getRamInGB(context);
+
+        if (ram >= 6) return 128L * 1024L * 1024L;
+        if (ram >= 4) return 64L * 1024L * 1024L;
+        if (ram >= 3) return 32L * 1024L * 1024L;
+        return 16L * 1024L * 1024L;
+    }
+
+    /**
+     * Returns the byte budget of the decoded page cache.
+     * Starts from a quarter of the app's memory class and scales it with
+     * device RAM (page bitmaps live in native memory since Android 8,
+     * so RAM is what really limits them).
+     * Never below 32 MB (about two screen-sized pages) or above 256 MB.
+     */
+    public static int getRecommendedPageCacheBytes(Context context) {
+        ActivityManager am =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int ram = getRamInGB(context);
+
+        long budget = am.getMemoryClass() * 1024L * 1024L / 4;
+        if (ram >= 8) budget *= 2;
+        else if (ram >= 6) budget = budget * 3 / 2;
+        else if (ram <= 2) budget /= 2;
+
+        return (int) Math.max(32L * 1024L * 1024L, Math.min(256L * 1024L * 1024L, budget));
+    }
+
+    /**
+     * Byte cap of the on-disk page cache: 1/20 of the free space in the
+     * cache dir, between 64 MB and 512 MB.
+     */
+    public static long getRecommendedPageDiskCacheBytes(Context context) {
+        long budget = context.getCacheDir().getUsableSpace() / 20;
+        return Math.max(64L * 1024L * 1024L, Math.min(512L * 1024L * 1024L, budget));
+    }
+
+    /**
+     * Byte cap of the on-disk thumbnail cache: 1/200 of the free space in
+     * the cache dir, between 16 MB and 64 MB (a few thousand covers).
      */
-    public static ExecutorService createIOExecutor(Context context) {
-        int threads = getRecommendedIOThreadCount(context);
-        return Executors.newFixedThreadPool(threads);
+    public static long getRecommendedThumbnailDiskCacheBytes(Context context) {
+        long budget = context.getCacheDir().getUsableSpace() / 200;
+        return Math.max(16L * 1024L * 1024L, Math.min(64L * 1024L * 1024L, budget));
     }
 
     /**
-     * Creates a general-purpose ExecutorService.
-     * Use this for:
-     * - Lightweight background tasks
-     * - Non-blocking operations
+     * Byte size of the thumbnail atlas (raw cover pixels, sparse until
+     * filled): 1/100 of the free space in the cache dir, between 32 MB and
+     * 128 MB (about 500 to 2000 covers).
      */
-    public static ExecutorService createExecutor() {
-        int threads = getThreadCount();
-        return Executors.newFixedThreadPool(threads);
+    public static long getRecommendedThumbnailAtlasBytes(Context context) {
+        long budget = context.getCacheDir().getUsableSpace() / 100;
+        return Math.max(32L * 1024L * 1024L, Math.min(128L * 1024L * 1024L, budget));
+    }
+
+    /**
+     * True on devices with about 3 GB of RAM or less (or flagged low-RAM),
+     * where page memory has to be kept as small as possible.
+     */
+    public static boolean isLowMemoryDevice(Context context) {
+        ActivityManager am =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        // getRamInGB rounds down: a 3 GB device reports 2
+        return am.isLowRamDevice() || getRamInGB(context) <= 2;
     }
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package com.codecademy.comicreader.view;
 
-import static java.lang.Math.min;
-
 import android.annotation.SuppressLint;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
@@ -31,7 +29,9 @@ import com.codecademy.comicreader.databinding.ComicViewerBinding;
 import com.codecademy.comicreader.dialog.InfoDialog;
 import com.codecademy.comicreader.dialog.SelectPageDialog;
 import com.codecademy.comicreader.theme.ThemeManager;
-import com.codecademy.comicreader.utils.SystemUtil;
+import com.codecademy.comicreader.utils.PriorityScheduler;
+import com.codecademy.comicreader.view.sources.BitmapPageSource;
+import com.codecademy.comicreader.view.sources.BitmapPool;
 import com.codecademy.comicreader.view.sources.CBRPageSource;
 import com.codecademy.comicreader.view.sources.CBZPageSource;
 import com.codecademy.comicreader.view.sources.ComicPageSource;
@@ -52,11 +52,11 @@ public class ComicViewer extends AppCompatActivity {
     private static final String KEY_THEME = "isNightMode";
     private static final String SCROLL_TYPE = "isScrolling";
     private static final String KEY_LAST_PAGE = "last_page_";
-    private static final int PRELOAD_PAGE_COUNT = 3;
 
     private ComicViewerBinding binding;
     private ViewPager2 viewPager;
     private PageRendererAdapter adapter = null;
+    private PagePrefetcher prefetcher = null;
     private ComicPageSource pageSource = null;
     private String comicPath = null;
     private Slider slider;
@@ -64,14 +64,17 @@ public class ComicViewer extends AppCompatActivity {
     private TextView tvPageNumber;
     private BottomSheetBehavior<View> bottomSheetBehavior;
     private ExecutorService ioExecutor;
-    private final ExecutorService renderExecutor = SystemUtil.createExecutor();
+    private ExecutorService renderExecutor;
 
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        ioExecutor = SystemUtil.createIOExecutor(this);
+        // Loading the comic and its tiles is what the user waits for
+        PriorityScheduler scheduler = PriorityScheduler.get(this);
+        ioExecutor = scheduler.newGroup(PriorityScheduler.Lane.IO, PriorityScheduler.Priority.VISIBLE);
+        renderExecutor = scheduler.newGroup(PriorityScheduler.Lane.DECODE, PriorityScheduler.Priority.VISIBLE);
         ThemeManager.applyTheme(this);
 
         binding = ComicViewerBinding.inflate(getLayoutInflater());
@@ -161,6 +164,8 @@ public class ComicViewer extends AppCompatActivity {
                 slider.setValue(position);
 
                 if (adapter != null) adapter.resetZoomAt(position);
+                pageSource.setCurrentPage(position);
+                if (prefetcher != null) prefetcher.onPageSelected(position);
 
                 getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
                         .edit().putInt(KEY_LAST_PAGE, position).apply();
@@ -269,13 +274,9 @@ public class ComicViewer extends AppCompatActivity {
         });
     }
 
+    // First prefetch window, onPageSelected keeps it moving
     private void preloadPages() {
-        if (pageSource == null) return;
-        int count = min(PRELOAD_PAGE_COUNT, pageSource.getPageCount());
-        for (int i = 0; i < count; i++) {
-            final int index = i;
-            ioExecutor.execute(() -> pageSource.getPageBitmap(index));
-        }
+        if (prefetcher != null) prefetcher.onPageSelected(viewPager.getCurrentItem());
     }
 
     private void showError(String type, Exception e) {
@@ -291,6 +292,8 @@ public class ComicViewer extends AppCompatActivity {
         this.pageSource = pageSource;
         adapter = new PageRendererAdapter(pageSource, renderExecutor);
         viewPager.setAdapter(adapter);
+        prefetcher = pageSource instanceof BitmapPageSource
+                ? new PagePrefetcher((BitmapPageSource) pageSource) : null;
 
         // Slider setup
         slider.setValueFrom(0);
@@ -463,14 +466,24 @@ public class ComicViewer extends AppCompatActivity {
         adapter = null;
 
         if (isFinishing()) { // ONLY when truly exiting
+            if (prefetcher != null) prefetcher.cancelAll();
+            prefetcher = null;
             if (pageSource != null) pageSource.closeSource();
             pageSource = null;
 
             ioExecutor.shutdownNow();
             renderExecutor.shutdownNow();
+            BitmapPool.clear();
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (pageSource != null) pageSource.trimMemory(level);
+        if (adapter != null) adapter.trimMemory(level);
+    }
+
     @Override
     public void onConfigurationChanged(@NonNull Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
@@ -0,0 +1,69 @@
+package com.codecademy.comicreader.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+
+/**
+ * GrayscalePageDrawable - draws an ALPHA_8 page (see GrayscalePages).
+ * The alpha channel holds the luminance: the page is painted white through
+ * it over a black background, which gives back the gray levels.
+ */
+public class GrayscalePageDrawable extends Drawable {
+
+    private final Bitmap bitmap;
+    private final Paint backgroundPaint = new Paint();
+    private final Paint pagePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    public GrayscalePageDrawable(Bitmap bitmap) {
+        this.bitmap = bitmap;
+        backgroundPaint.setColor(Color.BLACK);
+        pagePaint.setColor(Color.WHITE);
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        Rect bounds = getBounds();
+        canvas.drawRect(bounds, backgroundPaint);
+        canvas.drawBitmap(bitmap, null, bounds, pagePaint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return bitmap.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return bitmap.getHeight();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        backgroundPaint.setAlpha(alpha);
+        pagePaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        pagePaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.OPAQUE;
+    }
+}
@@ -0,0 +1,120 @@
+package com.codecademy.comicreader.view;
+
+import android.os.SystemClock;
+
+import com.codecademy.comicreader.view.sources.BitmapPageSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * PagePrefetcher - decodes the pages around the current one ahead of time.
+ * Driven by the ViewPager2 page changes (main thread):
+ * - direction: last page turn, the window extends mostly that way
+ * - rate: smoothed page turns per second, faster reading looks further ahead
+ * - window: capped by what the page cache holds, so prefetched pages never
+ *   evict the visible one
+ * A jump (slider, page dialog) resets the rate and cancels queued
+ * prefetches that fall outside the new window.
+ */
+public class PagePrefetcher {
+
+    private static final int MIN_AHEAD = 2;
+    private static final int MAX_AHEAD = 8;
+    private static final int BEHIND = 1;
+
+    // Seconds of reading at the current rate kept decoded ahead
+    private static final float LOOKAHEAD_SECONDS = 2f;
+
+    // Moves further than this are jumps, not page turns
+    private static final int JUMP_DISTANCE = 3;
+
+    // Weight of the latest page turn in the smoothed rate
+    private static final float RATE_SMOOTHING = 0.4f;
+
+    private final BitmapPageSource source;
+    private final Map<Integer, Future<?>> inFlight = new HashMap<>();
+
+    private int lastPosition = -1;
+    private long lastTurnTime = 0L;
+    private float pagesPerSecond = 0f;
+    private int direction = 1;
+
+    public PagePrefetcher(BitmapPageSource source) {
+        this.source = source;
+    }
+
+    public void onPageSelected(int position) {
+        long now = SystemClock.uptimeMillis();
+        int delta = lastPosition < 0 ? 0 : position - lastPosition;
+
+        if (Math.abs(delta) > JUMP_DISTANCE) {
+            // Reading starts over at the new position
+            pagesPerSecond = 0f;
+            direction = 1;
+        } else if (delta != 0) {
+            direction = Integer.signum(delta);
+            float rate = 1000f / Math.max(1L, now - lastTurnTime);
+            pagesPerSecond = pagesPerSecond * (1f - RATE_SMOOTHING) + rate * RATE_SMOOTHING;
+        }
+
+        lastPosition = position;
+        lastTurnTime = now;
+        updateWindow(position);
+    }
+
+    public void cancelAll() {
+        for (Future<?> future : inFlight.values()) future.cancel(false);
+        inFlight.clear();
+    }
+
+    private void updateWindow(int position) {
+        // The visible page is loaded by the adapter and stays cached too
+        int capacity = source.getPageCapacity() - 1;
+        int behind = Math.min(BEHIND, Math.max(0, capacity - MIN_AHEAD));
+        int ahead = MIN_AHEAD + Math.round(pagesPerSecond * LOOKAHEAD_SECONDS);
+        ahead = Math.max(0, Math.min(Math.min(ahead, MAX_AHEAD), capacity - behind));
+
+        List<Integer> wanted = windowPages(position, ahead, behind);
+
+        // Drop work for pages that left the window (still queued ones never run)
+        for (Iterator<Map.Entry<Integer, Future<?>>> it = inFlight.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Future<?>> entry = it.next();
+            if (entry.getValue().isDone()) {
+                it.remove();
+            } else if (!wanted.contains(entry.getKey())) {
+                entry.getValue().cancel(false);
+                it.remove();
+            }
+        }
+
+        for (int page : wanted) {
+            if (inFlight.containsKey(page)) continue;
+            try {
+                Future<?> future = source.prefetchPage(page);
+                if (future != null) inFlight.put(page, future);
+            } catch (RejectedExecutionException e) {
+                // Source is closing
+                return;
+            }
+        }
+    }
+
+    // Nearest first: next page, previous page, then the rest ahead
+    private List<Integer> windowPages(int position, int ahead, int behind) {
+        List<Integer> pages = new ArrayList<>();
+        int count = source.getPageCount();
+        for (int i = 1; i <= Math.max(ahead, behind); i++) {
+            int next = position + direction * i;
+            int previous = position - direction * i;
+            if (i <= ahead && next >= 0 && next < count) pages.add(next);
+            if (i <= behind && previous >= 0 && previous < count) pages.add(previous);
+        }
+        return pages;
+    }
+}
@@ -2,6 +2,7 @@
 package com.codecademy.comicreader.view;
 
 
+import android.content.ComponentCallbacks2;
 import android.graphics.Bitmap;
 import android.view.Gravity;
 import android.view.View;
@@ -13,8 +14,8 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.codecademy.comicreader.view.sources.BitmapPageSource;
+import com.codecademy.comicreader.view.sources.BitmapPool;
 import com.codecademy.comicreader.view.sources.ComicPageSource;
-import com.github.chrisbanes.photoview.PhotoView;
 
 import java.lang.ref.WeakReference;
 import java.util.Map;
@@ -34,6 +35,9 @@ public class PageRendererAdapter extends RecyclerView.Adapter<PageRendererAdapte
     private final Map<Integer, WeakReference<PageViewHolder>> holderRefs = new ConcurrentHashMap<>();
     private final Map<Integer, Future<?>> futures = new ConcurrentHashMap<>();
 
+    // Deep-zoom tiles of all pages
+    private final TileCache tileCache = new TileCache();
+
     public PageRendererAdapter(ComicPageSource pageSource, ExecutorService executor) {
         this.pageSource = pageSource;
         this.executor = executor;
@@ -58,27 +62,52 @@ public class PageRendererAdapter extends RecyclerView.Adapter<PageRendererAdapte
         container.addView(holder.progressBar);
 
         holder.progressBar.setVisibility(View.VISIBLE);
-        holder.photoView.setImageBitmap(null);
+        holder.clearImage();
+        // Tiles once the full page is shown, not over the preview
+        holder.photoView.unbindTiles();
 
         holderRefs.put(position, new WeakReference<>(holder));
 
         // Cancel previous decode
         pageSource.cancelLoad(position);
         Future<?> previous = futures.remove(position);
-        if (previous != null) previous.cancel(true);
+        if (previous != null) previous.cancel(false);
+
+        // Prefetched pages are shown right away, no spinner
+        if (pageSource instanceof BitmapPageSource) {
+            Bitmap cached = ((BitmapPageSource) pageSource).acquireCachedPage(position);
+            if (cached != null) {
+                holder.progressBar.setVisibility(View.GONE);
+                holder.showImage(cached);
+                BitmapPool.release(cached);
+                holder.photoView.bindTiles(pageSource, position, executor, tileCache);
+                return;
+            }
+        }
 
         // Async loading if BitmapPageSource
         Future<?> future;// Update UI on main thread
         if (pageSource instanceof BitmapPageSource) {
-            future = pageSource.loadPageAsync(position, bitmap -> {
-                WeakReference<PageViewHolder> ref = holderRefs.get(position);
-                if (ref == null) return;
-                PageViewHolder vh = ref.get();
-                if (vh == null) return;
-                if (vh.getBindingAdapterPosition() != position) return;
-
-                vh.progressBar.setVisibility(View.GONE);
-                vh.photoView.setImageBitmap(bitmap);
+            future = pageSource.loadPageAsync(position, new BitmapPageSource.PageCallback() {
+                @Override
+                public void onPreviewLoaded(Bitmap preview) {
+                    PageViewHolder vh = boundHolder(position);
+                    if (vh == null || vh.shownBitmap != null) return;
+
+                    vh.progressBar.setVisibility(View.GONE);
+                    vh.showImage(preview);
+                }
+
+                @Override
+                public void onPageLoaded(Bitmap bitmap) {
+                    PageViewHolder vh = boundHolder(position);
+                    if (vh == null) return;
+
+                    // Replaces the preview in place
+                    vh.progressBar.setVisibility(View.GONE);
+                    vh.showImage(bitmap);
+                    vh.photoView.bindTiles(pageSource, position, executor, tileCache);
+                }
             });
         } else {
             // Fallback: synchronous loading in executor
@@ -96,12 +125,22 @@ public class PageRendererAdapter extends RecyclerView.Adapter<PageRendererAdapte
                     if (holder.getBindingAdapterPosition() != position) return;
                     holder.progressBar.setVisibility(View.GONE);
                     holder.photoView.setImageBitmap(finalBmp);
+                    holder.photoView.bindTiles(pageSource, position, executor, tileCache);
                 });
             });
         }
         futures.put(position, future);
     }
 
+    // Holder still showing this position, or null
+    private PageViewHolder boundHolder(int position) {
+        WeakReference<PageViewHolder> ref = holderRefs.get(position);
+        if (ref == null) return null;
+        PageViewHolder vh = ref.get();
+        if (vh == null || vh.getBindingAdapterPosition() != position) return null;
+        return vh;
+    }
+
     @Override
     public void onViewRecycled(@NonNull PageViewHolder holder) {
         int pos = holder.getBindingAdapterPosition();
@@ -110,10 +149,11 @@ public class PageRendererAdapter extends RecyclerView.Adapter<PageRendererAdapte
 
             pageSource.cancelLoad(pos);
             Future<?> f = futures.remove(pos);
-            if (f != null) f.cancel(true);
+            if (f != null) f.cancel(false);
         }
 
-        holder.photoView.setImageDrawable(null);
+        holder.clearImage();
+        holder.photoView.unbindTiles();
         holder.photoView.setScale(1f, false);
 
         super.onViewRecycled(holder);
@@ -127,12 +167,27 @@ public class PageRendererAdapter extends RecyclerView.Adapter<PageRendererAdapte
         }
     }
 
+    // Tiles are cheap to decode again, drop them first under memory pressure
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) tileCache.clear();
+    }
+
     public void shutdown() {
         for (Future<?> f : futures.values()) {
-            f.cancel(true);
+            f.cancel(false);
         }
         futures.clear();
+
+        // Hand displayed bitmaps back to the pool
+        for (WeakReference<PageViewHolder> ref : holderRefs.values()) {
+            PageViewHolder vh = ref.get();
+            if (vh != null) {
+                vh.clearImage();
+                vh.photoView.unbindTiles();
+            }
+        }
         holderRefs.clear();
+        tileCache.clear();
         pageSource.closeSource();
     }
 
@@ -142,14 +197,17 @@ public class PageRendererAdapter extends RecyclerView.Adapter<PageRendererAdapte
     }
 
     public static class PageViewHolder extends RecyclerView.ViewHolder {
-        public final PhotoView photoView;
+        public final TiledPageView photoView;
         public final ProgressBar progressBar;
 
+        // Pooled bitmap on screen, referenced so it isn't reused while shown
+        private Bitmap shownBitmap;
+
         public PageViewHolder(@NonNull View itemView) {
             super(itemView);
             FrameLayout container = (FrameLayout) itemView;
 
-            photoView = new PhotoView(container.getContext());
+            photoView = new TiledPageView(container.getContext());
             photoView.setLayoutParams(new FrameLayout.LayoutParams(
                     ViewGroup.LayoutParams.MATCH_PARENT,
                     ViewGroup.LayoutParams.MATCH_PARENT
@@ -166,6 +224,26 @@ public class PageRendererAdapter extends RecyclerView.Adapter<PageRendererAdapte
             container.addView(photoView);
             container.addView(progressBar);
         }
+
+        void showImage(Bitmap bitmap) {
+            Bitmap previous = shownBitmap;
+            BitmapPool.retain(bitmap);
+            shownBitmap = bitmap;
+            if (bitmap != null && bitmap.getConfig() == Bitmap.Config.ALPHA_8) {
+                // Grayscale page, luminance stored in alpha
+                photoView.setImageDrawable(new GrayscalePageDrawable(bitmap));
+            } else {
+                photoView.setImageBitmap(bitmap);
+            }
+            BitmapPool.release(previous);
+        }
+
+        // Detach from the view first, only then may the bitmap be reused
+        void clearImage() {
+            photoView.setImageDrawable(null);
+            BitmapPool.release(shownBitmap);
+            shownBitmap = null;
+        }
     }
 }
 
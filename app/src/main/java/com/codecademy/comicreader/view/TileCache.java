@@ -0,0 +1,37 @@
+package com.codecademy.comicreader.view;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * TileCache - deep-zoom tiles of the open comic, bounded by bytes.
+ * Keyed by page, sample size and tile position. Main thread only.
+ */
+public class TileCache {
+
+    private static final int MAX_BYTES =
+            (int) Math.min(32L * 1024L * 1024L, Runtime.getRuntime().maxMemory() / 8);
+
+    private final LruCache<String, Bitmap> tiles = new LruCache<String, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap tile) {
+            return tile.getByteCount();
+        }
+    };
+
+    public static String key(int page, int sampleSize, int column, int row) {
+        return page + "/" + sampleSize + "/" + column + "/" + row;
+    }
+
+    public Bitmap get(String key) {
+        return tiles.get(key);
+    }
+
+    public void put(String key, Bitmap tile) {
+        tiles.put(key, tile);
+    }
+
+    public void clear() {
+        tiles.evictAll();
+    }
+}
@@ -0,0 +1,189 @@
+package com.codecademy.comicreader.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+
+import com.codecademy.comicreader.view.sources.ComicPageSource;
+import com.codecademy.comicreader.view.sources.DecodeSizing;
+import com.github.chrisbanes.photoview.PhotoView;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * TiledPageView - PhotoView with deep-zoom tiles.
+ * The page bitmap is fitted to the screen, so zooming in only magnifies it.
+ * Past TILE_THRESHOLD the visible part of the page is decoded again at the
+ * needed resolution, in TILE_SIZE tiles (ComicPageSource.decodeTile), and
+ * drawn over the page bitmap. Only tiles on screen are decoded.
+ */
+public class TiledPageView extends PhotoView {
+
+    private static final int TILE_SIZE = 512;
+
+    // Tile once page bitmap pixels are magnified this much on screen
+    private static final float TILE_THRESHOLD = 1.2f;
+
+    private final Matrix displayMatrix = new Matrix();
+    private final Matrix sourceToView = new Matrix();
+    private final Matrix viewToSource = new Matrix();
+    private final float[] matrixValues = new float[9];
+    private final RectF visibleArea = new RectF();
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // Tiles drawn in the current frame
+    private final List<Bitmap> frameTiles = new ArrayList<>();
+    private final List<RectF> frameRects = new ArrayList<>();
+    private final Set<String> frameKeys = new HashSet<>();
+
+    // Requested tiles (main thread) and tiles still on screen (read by workers)
+    private final Set<String> pending = new HashSet<>();
+    private final Set<String> wanted = ConcurrentHashMap.newKeySet();
+
+    private ComicPageSource source;
+    private int page = -1;
+    private ExecutorService executor;
+    private TileCache tileCache;
+
+    public TiledPageView(Context context) {
+        super(context);
+        // Tiles keep the page sharp, so allow zooming deeper than PhotoView's default 3x
+        setMaximumScale(DecodeSizing.MAX_ZOOM);
+    }
+
+    public void bindTiles(ComicPageSource source, int page, ExecutorService executor, TileCache tileCache) {
+        this.source = source;
+        this.page = page;
+        this.executor = executor;
+        this.tileCache = tileCache;
+        wanted.clear();
+        invalidate();
+    }
+
+    public void unbindTiles() {
+        source = null;
+        page = -1;
+        wanted.clear();
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        if (!collectTiles()) {
+            super.onDraw(canvas);
+            return;
+        }
+
+        // Page bitmap only where no tile covers it (PDF pages can be transparent)
+        canvas.save();
+        for (RectF rect : frameRects) canvas.clipOutRect(rect);
+        super.onDraw(canvas);
+        canvas.restore();
+
+        for (int i = 0; i < frameTiles.size(); i++) {
+            canvas.drawBitmap(frameTiles.get(i), null, frameRects.get(i), tilePaint);
+        }
+    }
+
+    // Finds the tiles on screen and requests missing ones. False if tiling isn't needed.
+    private boolean collectTiles() {
+        frameTiles.clear();
+        frameRects.clear();
+        frameKeys.clear();
+
+        Drawable drawable = getDrawable();
+        if (source == null || drawable == null || getWidth() == 0) return stopTiling();
+
+        int baseWidth = drawable.getIntrinsicWidth();
+        int[] size = source.getTileSourceSize(page);
+        if (baseWidth <= 0 || size == null) return stopTiling();
+
+        getDisplayMatrix(displayMatrix);
+        displayMatrix.getValues(matrixValues);
+        float baseScale = matrixValues[Matrix.MSCALE_X];
+        float sourcePerBase = size[0] / (float) baseWidth;
+
+        // Not zoomed past the page bitmap, or no extra detail to show
+        if (baseScale < TILE_THRESHOLD || sourcePerBase < TILE_THRESHOLD) return stopTiling();
+
+        // Coarsest level that still has a source pixel per screen pixel
+        float screenPerSource = baseScale / sourcePerBase;
+        int sample = Integer.highestOneBit(Math.max(1, (int) (1f / screenPerSource)));
+        int span = TILE_SIZE * sample;
+
+        sourceToView.set(displayMatrix);
+        sourceToView.preScale(1f / sourcePerBase, 1f / sourcePerBase);
+        if (!sourceToView.invert(viewToSource)) return stopTiling();
+
+        visibleArea.set(0, 0, getWidth(), getHeight());
+        viewToSource.mapRect(visibleArea);
+
+        int firstColumn = Math.max(0, (int) (visibleArea.left / span));
+        int firstRow = Math.max(0, (int) (visibleArea.top / span));
+        int lastColumn = Math.min((size[0] - 1) / span, (int) (visibleArea.right / span));
+        int lastRow = Math.min((size[1] - 1) / span, (int) (visibleArea.bottom / span));
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Rect region = new Rect(column * span, row * span,
+                        Math.min(size[0], (column + 1) * span), Math.min(size[1], (row + 1) * span));
+                String key = TileCache.key(page, sample, column, row);
+                frameKeys.add(key);
+                wanted.add(key);
+
+                Bitmap tile = tileCache.get(key);
+                if (tile == null) {
+                    requestTile(key, region, sample);
+                    continue;
+                }
+
+                RectF rect = new RectF(region.left, region.top, region.right, region.bottom);
+                sourceToView.mapRect(rect);
+                frameTiles.add(tile);
+                frameRects.add(rect);
+            }
+        }
+
+        // Workers skip tiles that scrolled away before their turn
+        wanted.retainAll(frameKeys);
+        return true;
+    }
+
+    private boolean stopTiling() {
+        wanted.clear();
+        return false;
+    }
+
+    private void requestTile(String key, Rect region, int sample) {
+        if (!pending.add(key)) return;
+
+        ComicPageSource tileSource = source;
+        int tilePage = page;
+        try {
+            executor.execute(() -> {
+                Bitmap tile = wanted.contains(key) ? tileSource.decodeTile(tilePage, region, sample) : null;
+                post(() -> {
+                    pending.remove(key);
+                    if (tile == null) return;
+                    tileCache.put(key, tile);
+                    if (tileSource == source && tilePage == page) invalidate();
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            // Viewer is closing
+            pending.remove(key);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.content.Context;
+
+import com.codecademy.comicreader.utils.MappedFileInStream;
+import com.codecademy.comicreader.utils.SystemUtil;
+
+import net.sf.sevenzipjbinding.IInArchive;
+import net.sf.sevenzipjbinding.SevenZip;
+import net.sf.sevenzipjbinding.SevenZipException;
+import net.sf.sevenzipjbinding.SevenZipNativeInitializationException;
+
+import java.io.Closeable;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ArchiveHandlePool - small, bounded pool of independent 7-Zip handles
+ * (IInArchive + MappedFileInStream) over the same file descriptor.
+ * A single IInArchive is not thread-safe, so each concurrent extraction
+ * borrows its own handle. Handles are opened lazily, only when every
+ * existing one is busy, and callers block once the pool is exhausted.
+ */
+public final class ArchiveHandlePool implements Closeable {
+
+    // Upper bound regardless of device class (each handle holds native state)
+    private static final int MAX_HANDLES = 3;
+
+    private final FileChannel channel;
+    private final long mappingBudgetPerHandle;
+    private final int maxHandles;
+
+    private final ArrayDeque<Handle> idle = new ArrayDeque<>();
+    private int opened = 0;
+    private boolean closed = false;
+
+    /**
+     * @param channel       shared channel, owned (and closed) by the caller
+     * @param mappingBudget total mapping budget, split across handles
+     * @param maxHandles    maximum number of concurrently open handles
+     */
+    public ArchiveHandlePool(FileChannel channel, long mappingBudget, int maxHandles)
+            throws SevenZipNativeInitializationException {
+        this.channel = channel;
+        this.maxHandles = Math.max(1, maxHandles);
+        this.mappingBudgetPerHandle = mappingBudget / this.maxHandles;
+        SevenZip.initSevenZipFromPlatformJAR();
+    }
+
+    /**
+     * Pool size matched to the IO thread count, capped at MAX_HANDLES.
+     */
+    public static int recommendedSize(Context context) {
+        return Math.min(MAX_HANDLES, SystemUtil.getRecommendedIOThreadCount(context));
+    }
+
+    /**
+     * Borrows a handle, opening a new one if all are busy and the pool
+     * is not full yet, otherwise waits for one to be released.
+     */
+    public Handle acquire() throws SevenZipException, InterruptedException {
+        synchronized (this) {
+            while (true) {
+                if (closed) throw new SevenZipException("Archive pool closed");
+
+                Handle handle = idle.poll();
+                if (handle != null) return handle;
+
+                if (opened < maxHandles) break;
+                wait();
+            }
+            // Reserve the slot, then open outside the lock
+            opened++;
+        }
+
+        try {
+            return open();
+        } catch (SevenZipException | RuntimeException e) {
+            synchronized (this) {
+                opened--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    // Returns a borrowed handle to the pool.
+    public void release(Handle handle) {
+        if (handle == null) return;
+        synchronized (this) {
+            if (!closed) {
+                idle.push(handle);
+                notifyAll();
+                return;
+            }
+        }
+        handle.close();
+    }
+
+    /**
+     * Closes every idle handle. Handles still borrowed are closed on release.
+     * The shared channel is left open for the owner to close.
+     */
+    @Override
+    public void close() {
+        List<Handle> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for (Handle handle : toClose) handle.close();
+    }
+
+    private Handle open() throws SevenZipException {
+        MappedFileInStream stream = new MappedFileInStream(channel, mappingBudgetPerHandle);
+        IInArchive archive = SevenZip.openInArchive(null, stream);
+        return new Handle(stream, archive);
+    }
+
+    /**
+     * One open archive with its own read position.
+     */
+    public static final class Handle {
+        public final MappedFileInStream stream;
+        public final IInArchive archive;
+
+        Handle(MappedFileInStream stream, IInArchive archive) {
+            this.stream = stream;
+            this.archive = archive;
+        }
+
+        void close() {
+            // Only the archive: the stream shares the pool owner's channel
+            try { archive.close(); } catch (Exception ignored) {}
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.codecademy.comicreader.utils.SystemUtil;
+
+/**
+ * BitmapConfigStrategy - which Bitmap.Config pages are kept in.
+ * Modes (setting "bitmap_mode"):
+ * - AUTO: LOW_MEMORY on devices with ~3 GB RAM or less, QUALITY otherwise
+ * - HARDWARE (opt-in): display-only pages live in graphics memory, but they
+ *   can't be pooled, kept as ALPHA_8 grayscale or written to the disk cache
+ *   without a software copy, so AUTO never picks it
+ * - LOW_MEMORY: opaque pages as RGB_565 (half of ARGB_8888)
+ * - QUALITY: always ARGB_8888
+ * Bitmaps whose pixels are read back or drawn into (PDF render targets,
+ * grayscale sampling, thumbnails saved to disk) use softwareConfig(), which
+ * never returns HARDWARE.
+ */
+public final class BitmapConfigStrategy {
+
+    public static final String PREF_KEY = "bitmap_mode";
+    private static final String PREFS_NAME = "comicPrefs";
+
+    public enum Mode { AUTO, HARDWARE, LOW_MEMORY, QUALITY }
+
+    private final Mode mode;
+
+    public BitmapConfigStrategy(Mode mode) {
+        this.mode = mode;
+    }
+
+    // Resolves the user setting (AUTO by default) for this device
+    public static BitmapConfigStrategy fromPreferences(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Mode mode;
+        try {
+            mode = Mode.valueOf(prefs.getString(PREF_KEY, Mode.AUTO.name()));
+        } catch (IllegalArgumentException e) {
+            mode = Mode.AUTO;
+        }
+
+        if (mode == Mode.AUTO) {
+            // Software configs: pages go through BitmapPool and the grayscale path
+            mode = SystemUtil.isLowMemoryDevice(context) ? Mode.LOW_MEMORY : Mode.QUALITY;
+        }
+        return new BitmapConfigStrategy(mode);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    // Config for a decoded page that is only drawn
+    public Bitmap.Config displayConfig(boolean opaque) {
+        if (mode == Mode.HARDWARE) return Bitmap.Config.HARDWARE;
+        return softwareConfig(opaque);
+    }
+
+    // Config for bitmaps whose pixels are accessed
+    public Bitmap.Config softwareConfig(boolean opaque) {
+        if (mode == Mode.LOW_MEMORY && opaque) return Bitmap.Config.RGB_565;
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Converts a rendered (software) page to its display config and hands
+     * the rendered bitmap back to the BitmapPool. Returns the input if no
+     * conversion is needed or the copy fails.
+     */
+    public Bitmap toDisplay(Bitmap rendered, boolean opaque) {
+        Bitmap.Config target = displayConfig(opaque);
+        if (rendered == null || rendered.getConfig() == target) return rendered;
+
+        Bitmap copy;
+        try {
+            // Software copies stay mutable so the pool can reuse them
+            copy = rendered.copy(target, target != Bitmap.Config.HARDWARE);
+        } catch (Exception e) {
+            Log.w("BitmapConfigStrategy", "Copy to " + target + " failed", e);
+            return rendered;
+        }
+        if (copy == null) return rendered;
+
+        BitmapPool.giveBack(rendered);
+        return copy;
+    }
+}
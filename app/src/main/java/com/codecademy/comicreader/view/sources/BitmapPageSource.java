@@ -1,127 +1,497 @@
 package com.codecademy.comicreader.view.sources;
 
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.OperationCanceledException;
 import android.util.Log;
 import android.util.LruCache;
 
+import com.codecademy.comicreader.utils.ByteArrayPool;
+import com.codecademy.comicreader.utils.PageBuffer;
+import com.codecademy.comicreader.utils.PriorityScheduler;
 import com.codecademy.comicreader.utils.SystemUtil;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 public abstract class BitmapPageSource implements ComicPageSource {
 
-    // Small in-memory page cache
-    protected final LruCache<Integer, Bitmap> bitmapCache = new LruCache<>(5);
+    private static final String TAG = "BitmapPageSource";
+
+    // Assumed cache capacity in pages before any page was decoded
+    private static final int DEFAULT_PAGE_CAPACITY = 4;
+
+    // In-memory page cache sized in bytes, holds one BitmapPool reference per page.
+    // Always accessed under its own lock so eviction and retain can't interleave.
+    protected final LruCache<Integer, Bitmap> bitmapCache;
+    private final int cacheBudget;
 
     /**
-     * IO executor = equivalent of Dispatchers.IO
+     * IO executor = this source's tasks on the shared PriorityScheduler
      * DO NOT interrupt threads → prevents ClosedByInterruptException
      */
-    private final ExecutorService executor;
+    private final PriorityScheduler.TaskGroup executor;
 
     /**
      * Track running tasks (equivalent to Job map in Kotlin)
      */
-    private final Map<Integer, Future<?>> jobs = new ConcurrentHashMap<>();
+    private final Map<Integer, PageLoad> jobs = new ConcurrentHashMap<>();
+    private final Map<Integer, PageLoad> prefetches = new ConcurrentHashMap<>();
+
+    // Pages being decoded: concurrent requests for one page share its decode.
+    // Keyed by index, the decode target (decodeSizing) is fixed per source.
+    private final Map<Integer, Flight> flights = new HashMap<>();
+
+    // Page on screen, loads are prioritized by their distance to it
+    private volatile int currentPage = 0;
 
     /**
      * Main thread handler (equivalent to Dispatchers.Main)
      */
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
+    // Decode size policy for this screen
+    protected final DecodeSizing decodeSizing;
+
+    // Bitmap config of pages (setting, device RAM)
+    protected final BitmapConfigStrategy bitmapStrategy;
+
+    // Pages of earlier sessions, shared by all sources
+    private final PageDiskCache diskCache;
+
+    // Error placeholders, never written to disk
+    private final Set<Bitmap> placeholders =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    // Region decoders of recently zoomed pages (each holds one encoded page)
+    private final Object regionLock = new Object();
+    private final LruCache<Integer, BitmapRegionDecoder> regionDecoders =
+            new LruCache<Integer, BitmapRegionDecoder>(2) {
+                @Override
+                protected void entryRemoved(boolean evicted, Integer key,
+                                            BitmapRegionDecoder oldValue, BitmapRegionDecoder newValue) {
+                    if (oldValue != newValue) oldValue.recycle();
+                }
+            };
+
     protected BitmapPageSource(Context context) {
-        this.executor = SystemUtil.createIOExecutor(context);
+        this.executor = PriorityScheduler.get(context).newGroup(PriorityScheduler.Lane.DECODE, PriorityScheduler.Priority.PREFETCH);
+        this.decodeSizing = DecodeSizing.forScreen(context);
+        this.bitmapStrategy = BitmapConfigStrategy.fromPreferences(context);
+        this.diskCache = PageDiskCache.get(context);
+
+        this.cacheBudget = SystemUtil.getRecommendedPageCacheBytes(context);
+        this.bitmapCache = new LruCache<Integer, Bitmap>(cacheBudget) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, Bitmap oldValue, Bitmap newValue) {
+                BitmapPool.release(oldValue);
+            }
+        };
     }
 
     // Cache helpers
-    protected void cache(int index, Bitmap bmp) {
-        if (bmp != null && !bmp.isRecycled()) {
+    private void cache(int index, Bitmap bmp) {
+        if (bmp == null || bmp.isRecycled()) return;
+        synchronized (bitmapCache) {
+            BitmapPool.retain(bmp);
             bitmapCache.put(index, bmp);
         }
     }
 
-    protected Bitmap getCached(int index) {
-        Bitmap bmp = bitmapCache.get(index);
-        return (bmp != null && !bmp.isRecycled()) ? bmp : null;
+    // Cached page with a reference for the caller, or null
+    private Bitmap acquireCached(int index) {
+        synchronized (bitmapCache) {
+            Bitmap bmp = bitmapCache.get(index);
+            if (bmp == null || bmp.isRecycled()) return null;
+            BitmapPool.retain(bmp);
+            return bmp;
+        }
+    }
+
+    /**
+     * Cached or freshly decoded page with a reference for the caller (release when done).
+     * Throws OperationCanceledException once cancel is cancelled (may be null).
+     * Single flight: the first request for a page decodes it, concurrent ones wait
+     * for that result. The decode is only cancelled when every request was.
+     */
+    private Bitmap acquirePage(int index, PageDecoder.PreviewListener preview, CancellationSignal cancel) {
+        Bitmap cached = acquireCached(index);
+        if (cached != null) return cached;
+
+        Flight flight;
+        boolean leader;
+        synchronized (flights) {
+            flight = flights.get(index);
+            leader = flight == null;
+            if (leader) {
+                flight = new Flight(PriorityScheduler.currentTask());
+                flights.put(index, flight);
+            }
+            flight.join(!leader);
+        }
+
+        if (cancel != null) cancel.setOnCancelListener(flight::cancelOne);
+        try {
+            if (!leader) return flight.await(cancel);
+
+            Bitmap bmp = null;
+            RuntimeException error = null;
+            try {
+                bmp = loadPage(index, preview, flight.signal);
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                synchronized (flights) {
+                    flights.remove(index, flight);
+                }
+                flight.publish(bmp, error);
+            }
+            if (error != null) throw error;
+            return bmp;
+
+        } finally {
+            if (cancel != null) cancel.setOnCancelListener(null);
+        }
+    }
+
+    // acquirePage() of the request that runs the decode
+    private Bitmap loadPage(int index, PageDecoder.PreviewListener preview, CancellationSignal cancel) {
+        // Finished by another request in the meantime
+        Bitmap cached = acquireCached(index);
+        if (cached != null) return cached;
+
+        // Disk read instead of extract + decode when shown before
+        String diskKey = PageDiskCache.key(getFingerprint(), index, decodeSizing.getKey());
+        Bitmap bmp = diskCache.read(diskKey, decodeSizing, bitmapStrategy);
+        if (bmp != null) {
+            onPageRestored(index);
+        } else {
+            // Let a waiting visible page go first before a long decode
+            PriorityScheduler.checkpoint();
+            throwIfCancelled(cancel);
+            bmp = decodePage(index, preview, cancel);
+            if (bmp == null) return null;
+            if (!placeholders.contains(bmp)) diskCache.write(diskKey, bmp);
+        }
+
+        BitmapPool.retain(bmp);
+        cache(index, bmp);
+        return bmp;
+    }
+
+    /**
+     * Returns the page without taking a reference: the bitmap stays valid
+     * while it's cached. Use loadPageAsync() for anything that displays it.
+     */
+    @Override
+    public final Bitmap getPageBitmap(int index) {
+        Bitmap bmp = acquirePage(index, null, null);
+        BitmapPool.release(bmp);
+        return bmp;
+    }
+
+    // Page with a reference for the caller if it's in memory (no decode), else null
+    public Bitmap acquireCachedPage(int index) {
+        return acquireCached(index);
+    }
+
+    /**
+     * Decodes a page into the cache ahead of time, nothing is delivered.
+     * Cancel the returned task to drop it while it's still queued, or to stop
+     * its extraction at the next chunk once it runs. A prefetch of the page
+     * still in flight is returned instead of starting another one.
+     */
+    public Future<?> prefetchPage(int index) {
+        PageLoad load = new PageLoad();
+        PageLoad previous = prefetches.put(index, load);
+        if (previous != null) {
+            PriorityScheduler.Task running = previous.future;
+            if (running != null && !running.isDone() && !previous.signal.isCanceled()) {
+                // Keep the tracked one: reprioritized and cancelled on close
+                prefetches.put(index, previous);
+                return running;
+            }
+            previous.cancel();
+        }
+        load.future = executor.submit(priorityFor(index), () -> {
+            try {
+                BitmapPool.release(acquirePage(index, null, load.signal));
+            } catch (OperationCanceledException e) {
+                // Left the prefetch window
+            } catch (Throwable t) {
+                Log.w(TAG, "Prefetch of page " + index + " failed", t);
+            } finally {
+                prefetches.remove(index, load);
+            }
+        }, load.signal);
+        return load.future;
+    }
+
+    // Re-sorts queued loads and re-nices running ones for the new page
+    @Override
+    public void setCurrentPage(int index) {
+        currentPage = index;
+        reprioritize(jobs);
+        reprioritize(prefetches);
+    }
+
+    private void reprioritize(Map<Integer, PageLoad> loads) {
+        for (Map.Entry<Integer, PageLoad> entry : loads.entrySet()) {
+            PriorityScheduler.Task task = entry.getValue().future;
+            if (task == null) continue;
+            // Cancelled prefetches never reach their finally block
+            if (task.isDone()) loads.remove(entry.getKey(), entry.getValue());
+            else task.setPriority(priorityFor(entry.getKey()));
+        }
+    }
+
+    private PriorityScheduler.Priority priorityFor(int index) {
+        int distance = Math.abs(index - currentPage);
+        if (distance == 0) return PriorityScheduler.Priority.VISIBLE;
+        if (distance == 1) return PriorityScheduler.Priority.ADJACENT;
+        return PriorityScheduler.Priority.PREFETCH;
+    }
+
+    // Pages the memory cache holds at the current average page size
+    public int getPageCapacity() {
+        synchronized (bitmapCache) {
+            int count = bitmapCache.snapshot().size();
+            if (count == 0 || bitmapCache.size() == 0) return DEFAULT_PAGE_CAPACITY;
+            return Math.max(1, bitmapCache.maxSize() / (bitmapCache.size() / count));
+        }
+    }
+
+    // Runs housekeeping work (e.g. index writes) on the source's IO executor,
+    // behind page loads. Tasks submitted right before closeSource() still complete.
+    protected void executeInBackground(Runnable task) {
+        executor.submit(PriorityScheduler.Priority.PREFETCH, task);
+    }
+
+    // Encoded bytes of a page for region decoding (caller closes), null if unavailable.
+    // cancel (may be null) aborts the extraction at the next chunk.
+    protected PageBuffer readEncodedPage(int index, CancellationSignal cancel) throws IOException {
+        return null;
+    }
+
+    // Deep zoom: decodes a region from the encoded page instead of the downsampled bitmap
+    @Override
+    public Bitmap decodeTile(int index, Rect region, int sampleSize) {
+        try {
+            BitmapRegionDecoder decoder = regionDecoderFor(index);
+            if (decoder == null) return null;
+
+            Rect clipped = new Rect(region);
+            if (!clipped.intersect(0, 0, decoder.getWidth(), decoder.getHeight())) return null;
+
+            BitmapFactory.Options opts = new BitmapFactory.Options();
+            opts.inSampleSize = sampleSize;
+            // Tiles stay in software; images with alpha are kept in ARGB_8888 by the decoder
+            opts.inPreferredConfig = bitmapStrategy.softwareConfig(true);
+            return decoder.decodeRegion(clipped, opts);
+
+        } catch (Exception e) {
+            // Also hit when the decoder was evicted (recycled) mid-decode
+            Log.w(TAG, "Failed to decode tile of page " + index, e);
+            return null;
+        }
+    }
+
+    private BitmapRegionDecoder regionDecoderFor(int index) throws IOException {
+        synchronized (regionLock) {
+            BitmapRegionDecoder decoder = regionDecoders.get(index);
+            if (decoder != null && !decoder.isRecycled()) return decoder;
+
+            try (PageBuffer page = readEncodedPage(index, null)) {
+                if (page == null) return null;
+                // Copies the bytes, the pooled buffer can go back right away
+                decoder = BitmapRegionDecoder.newInstance(page.getData(), 0, page.getLength(), false);
+            }
+            if (decoder != null) regionDecoders.put(index, decoder);
+            return decoder;
+        }
+    }
+
+    /**
+     * Shrinks the page cache in tiers:
+     * - RUNNING_MODERATE: 3/4 of the budget
+     * - RUNNING_LOW: 1/2, free pooled memory
+     * - RUNNING_CRITICAL: 1/4 (about the visible page)
+     * - UI_HIDDEN and background levels: everything
+     */
+    @Override
+    public void trimMemory(int level) {
+        int target;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) target = 0;
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) target = cacheBudget / 4;
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) target = cacheBudget / 2;
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) target = cacheBudget * 3 / 4;
+        else return;
+
+        synchronized (bitmapCache) {
+            if (target == 0) bitmapCache.evictAll();
+            else bitmapCache.trimToSize(target);
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            synchronized (regionLock) {
+                regionDecoders.evictAll();
+            }
+            BitmapPool.clear();
+            ByteArrayPool.clear();
+        }
+        Log.i(TAG, "Trimmed (level " + level + "): " + getCacheStats());
+    }
+
+    // Current usage and hit rate of the page cache, e.g. for logs
+    public String getCacheStats() {
+        synchronized (bitmapCache) {
+            int hits = bitmapCache.hitCount();
+            int lookups = hits + bitmapCache.missCount();
+            return String.format(Locale.US, "%d pages, %.1f/%.1f MB, hit rate %d%% (%d/%d)",
+                    bitmapCache.snapshot().size(),
+                    bitmapCache.size() / (1024f * 1024f), bitmapCache.maxSize() / (1024f * 1024f),
+                    lookups == 0 ? 0 : hits * 100 / lookups, hits, lookups);
+        }
     }
 
     // Cancel
     @Override
     public void cancelLoad(int index) {
-        Future<?> future = jobs.remove(index);
-        if (future != null) {
-            future.cancel(false);
+        PageLoad load = jobs.remove(index);
+        if (load != null) {
+            load.cancel();
         }
     }
 
-    // Async page load
+    /**
+     * Async page load, delivered in up to two steps:
+     * 1. onPreviewLoaded: 1/8 scale preview, for large pages that aren't cached
+     * 2. onPageLoaded: the full page (always called unless cancelled)
+     */
     @Override
     public Future<?> loadPageAsync(int index, PageCallback callback) {
         // Cancel any previous task
         cancelLoad(index);
 
-        Future<?> future = executor.submit(() -> {
+        PageLoad load = new PageLoad();
+        jobs.put(index, load);
+
+        load.future = executor.submit(priorityFor(index), () -> {
             try {
-                // Check cache first
-                Bitmap cached = getCached(index);
-                if (cached != null) {
-                    postResult(callback, cached);
-                    return;
-                }
+                if (load.cancelled) return;
 
-                // Load page bitmap
+                // Cached or decoded, referenced until the callback has run
                 Bitmap bmp;
                 try {
-                    bmp = getPageBitmap(index);
+                    bmp = acquirePage(index, preview -> postPreview(load, callback, preview), load.signal);
+                } catch (OperationCanceledException e) {
+                    // Scrolled away, nothing is delivered
+                    bmp = null;
                 } catch (Throwable t) {
-                    Log.e("BitmapPageSource", "Error decoding page " + index, t);
+                    Log.e(TAG, "Error decoding page " + index, t);
                     bmp = null;
                 }
 
-                if (bmp != null) cache(index, bmp);
-
+                postResult(load, callback, bmp);
 
-                postResult(callback, bmp);
+            } finally {
+                jobs.remove(index, load);
+            }
+        }, load.signal);
+        return load.future;
+    }
 
+    // Previews aren't cached: after the callback the pool may reuse them
+    private void postPreview(PageLoad load, PageCallback callback, Bitmap preview) {
+        BitmapPool.retain(preview);
+        mainHandler.post(() -> {
+            try {
+                if (!load.cancelled) callback.onPreviewLoaded(preview);
             } finally {
-                jobs.remove(index);
+                BitmapPool.release(preview);
             }
         });
-
-        jobs.put(index, future);
-        return future;
     }
 
-    private void postResult(PageCallback callback, Bitmap bmp) {
-        mainHandler.post(() -> callback.onPageLoaded(bmp));
+    // The callback must retain the bitmap if it keeps it (e.g. while displayed)
+    private void postResult(PageLoad load, PageCallback callback, Bitmap bmp) {
+        mainHandler.post(() -> {
+            try {
+                if (!load.cancelled) callback.onPageLoaded(bmp);
+            } finally {
+                BitmapPool.release(bmp);
+            }
+        });
     }
 
 
     // Close
     @Override
     public void closeSource() {
-        for (Future<?> f : jobs.values()) {
-            f.cancel(false); // cooperative
+        Log.d(TAG, "Page cache at close: " + getCacheStats());
+        for (PageLoad load : jobs.values()) {
+            load.cancel(); // cooperative
         }
         jobs.clear();
+        for (PageLoad load : prefetches.values()) {
+            load.cancel();
+        }
+        prefetches.clear();
 
-        bitmapCache.evictAll();
+        synchronized (bitmapCache) {
+            bitmapCache.evictAll();
+        }
+        synchronized (regionLock) {
+            regionDecoders.evictAll();
+        }
         executor.shutdown();
     }
 
-    // Abstract
-    @Override
-    public abstract Bitmap getPageBitmap(int index);
+    // Identifies the file for the disk cache (FileFingerprint), null = don't cache
+    protected String getFingerprint() {
+        return null;
+    }
+
+    // True if the page is in the disk cache at the current decode size
+    protected boolean isOnDisk(int index) {
+        return diskCache.contains(PageDiskCache.key(getFingerprint(), index, decodeSizing.getKey()));
+    }
+
+    // A page came from the disk cache, decodePage() was skipped
+    protected void onPageRestored(int index) {
+    }
+
+    // Abstract: decodes one page (not cached yet). Bitmaps from PageDecoder or
+    // BitmapPool.obtain() reuse pooled memory. preview and cancel may be null;
+    // a cancelled load should stop early by throwing OperationCanceledException.
+    protected abstract Bitmap decodePage(int index, PageDecoder.PreviewListener preview, CancellationSignal cancel);
+
+    // Stage boundary check for decodePage()
+    protected static void throwIfCancelled(CancellationSignal cancel) {
+        if (cancel != null) cancel.throwIfCanceled();
+    }
 
     // Shared corrupt placeholder
     protected Bitmap createCorruptPlaceholder(String msg) {
@@ -139,12 +509,92 @@ public abstract class BitmapPageSource implements ComicPageSource {
         paint.setTextAlign(Paint.Align.CENTER);
 
         canvas.drawText(msg, width / 2f, height / 2f, paint);
+        placeholders.add(bmp);
         return bmp;
     }
 
+    // One in-flight page decode and the requests waiting for it
+    private static final class Flight {
+        // Cancelled once no request wants the page anymore
+        final CancellationSignal signal = new CancellationSignal();
+        private final PriorityScheduler.Task leaderTask;
+
+        private int interested = 0;
+        private int followers = 0;
+        private boolean done = false;
+        // Referenced by the flight until every follower took its own reference
+        private Bitmap result;
+        private RuntimeException error;
+
+        Flight(PriorityScheduler.Task leaderTask) {
+            this.leaderTask = leaderTask;
+        }
+
+        synchronized void join(boolean follower) {
+            interested++;
+            if (follower) followers++;
+        }
+
+        synchronized void cancelOne() {
+            if (--interested == 0) signal.cancel();
+            notifyAll();
+        }
+
+        synchronized void publish(Bitmap bmp, RuntimeException e) {
+            result = bmp;
+            error = e;
+            done = true;
+            if (bmp != null && followers > 0) BitmapPool.retain(bmp);
+            notifyAll();
+        }
+
+        // Result with a reference for the caller, or the leader's exception
+        synchronized Bitmap await(CancellationSignal cancel) {
+            try {
+                // A visible page shouldn't wait on a niced prefetch
+                PriorityScheduler.Task waiting = PriorityScheduler.currentTask();
+                if (leaderTask != null && waiting != null) leaderTask.boostTo(waiting.getPriority());
+
+                while (!done) {
+                    throwIfCancelled(cancel);
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new OperationCanceledException("Interrupted waiting for page");
+                    }
+                }
+                if (error != null) throw error;
+                if (result != null) BitmapPool.retain(result);
+                return result;
+            } finally {
+                if (--followers == 0 && done && result != null) BitmapPool.release(result);
+            }
+        }
+    }
+
+    // One loadPageAsync() or prefetch call; cancelling stops deliveries that haven't run yet
+    private static final class PageLoad {
+        // Also cancelled by the task's own cancel(), e.g. from the prefetcher
+        final CancellationSignal signal = new CancellationSignal();
+        volatile boolean cancelled;
+        volatile PriorityScheduler.Task future;
+
+        void cancel() {
+            cancelled = true;
+            signal.cancel();
+            Future<?> f = future;
+            if (f != null) f.cancel(false);
+        }
+    }
+
     // Page callback interface
     public interface PageCallback {
         void onPageLoaded(Bitmap bitmap);
+
+        // Low-resolution stand-in shown until onPageLoaded (may not be called)
+        default void onPreviewLoaded(Bitmap preview) {
+        }
     }
 }
 
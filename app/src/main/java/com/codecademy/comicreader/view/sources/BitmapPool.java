@@ -0,0 +1,155 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * BitmapPool - reference-counted page bitmaps, recycled through inBitmap.
+ * Every owner of a page bitmap holds one reference:
+ * - the page cache while the page is cached
+ * - a view (PhotoView) while the page is displayed
+ * - loadPageAsync while the bitmap is handed to the callback
+ * When the last reference is released the bitmap goes to a free list,
+ * keyed by allocation size, and the next decode or PDF render of a similar
+ * size reuses its memory instead of allocating a new bitmap.
+ * Shared by all page sources of the process.
+ */
+public final class BitmapPool {
+
+    // Reuse only if the free bitmap is at most this many times too large
+    private static final int MAX_SIZE_RATIO = 2;
+
+    private static final long MAX_FREE_BYTES =
+            Math.min(64L * 1024L * 1024L, Runtime.getRuntime().maxMemory() / 8);
+
+    // Live bitmaps -> number of owners
+    private static final Map<Bitmap, Integer> refs = new IdentityHashMap<>();
+
+    // Free bitmaps by allocation byte count (size classes)
+    private static final TreeMap<Integer, ArrayDeque<Bitmap>> free = new TreeMap<>();
+    private static long freeBytes = 0L;
+
+    private BitmapPool() {}
+
+    /**
+     * Adds an owner. A bitmap seen for the first time starts at one owner.
+     */
+    public static synchronized void retain(Bitmap bitmap) {
+        if (bitmap == null) return;
+        Integer count = refs.get(bitmap);
+        refs.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Drops an owner. The last release makes the bitmap reusable, so the
+     * caller must no longer draw it (clear the ImageView first).
+     */
+    public static synchronized void release(Bitmap bitmap) {
+        if (bitmap == null) return;
+        Integer count = refs.get(bitmap);
+        if (count == null) return;
+
+        if (count > 1) {
+            refs.put(bitmap, count - 1);
+            return;
+        }
+        refs.remove(bitmap);
+        putFree(bitmap);
+    }
+
+    /**
+     * Takes a free bitmap of the same config able to hold width x height
+     * pixels, or null. The result isn't tracked until retained.
+     */
+    public static synchronized Bitmap takeReusable(int width, int height, Bitmap.Config config) {
+        if (width <= 0 || height <= 0) return null;
+        long needed = (long) width * height * bytesPerPixel(config);
+        if (needed > Integer.MAX_VALUE) return null;
+
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, needed * MAX_SIZE_RATIO);
+
+        // Smallest fitting size class first
+        for (Map.Entry<Integer, ArrayDeque<Bitmap>> entry
+                : free.subMap((int) needed, true, maxBytes, true).entrySet()) {
+            ArrayDeque<Bitmap> bucket = entry.getValue();
+            for (Iterator<Bitmap> it = bucket.iterator(); it.hasNext(); ) {
+                Bitmap candidate = it.next();
+                if (candidate.getConfig() != config) continue;
+
+                it.remove();
+                if (bucket.isEmpty()) free.remove(entry.getKey());
+                freeBytes -= entry.getKey();
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts back a bitmap taken with takeReusable() that ended up unused.
+     */
+    public static synchronized void giveBack(Bitmap bitmap) {
+        if (bitmap != null && !refs.containsKey(bitmap)) putFree(bitmap);
+    }
+
+    /**
+     * Returns a cleared bitmap of exactly width x height, reusing a free one
+     * when possible (for PDF rendering).
+     */
+    public static Bitmap obtain(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = takeReusable(width, height, config);
+        if (bitmap != null) {
+            try {
+                bitmap.reconfigure(width, height, config);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            } catch (IllegalArgumentException ignored) {
+                // Not reconfigurable, allocate instead
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    // Drops all free bitmaps (e.g. when leaving the viewer).
+    public static synchronized void clear() {
+        free.clear();
+        freeBytes = 0L;
+    }
+
+    private static void putFree(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable()) return;
+        if (bitmap.getConfig() == null || bitmap.getConfig() == Bitmap.Config.HARDWARE) return;
+
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > MAX_FREE_BYTES) return;
+
+        // Make room by dropping the largest free bitmaps
+        while (freeBytes + bytes > MAX_FREE_BYTES && !free.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = free.lastEntry();
+            largest.getValue().poll();
+            freeBytes -= largest.getKey();
+            if (largest.getValue().isEmpty()) free.remove(largest.getKey());
+        }
+
+        ArrayDeque<Bitmap> bucket = free.get(bytes);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            free.put(bytes, bucket);
+        }
+        bucket.push(bitmap);
+        freeBytes += bytes;
+    }
+
+    static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) return 1;
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) return 2;
+        if (config == Bitmap.Config.RGBA_F16) return 8;
+        return 4;
+    }
+}
@@ -3,141 +3,210 @@ package com.codecademy.comicreader.view.sources;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.CancellationSignal;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
-import com.codecademy.comicreader.utils.MappedFileInStream;
+import com.codecademy.comicreader.utils.FileFingerprint;
+import com.codecademy.comicreader.utils.PageBuffer;
+import com.codecademy.comicreader.utils.PriorityScheduler;
+import com.codecademy.comicreader.utils.SystemUtil;
 
-import net.sf.sevenzipjbinding.IInArchive;
-import net.sf.sevenzipjbinding.PropID;
-import net.sf.sevenzipjbinding.SevenZip;
-import net.sf.sevenzipjbinding.SevenZipException;
 import net.sf.sevenzipjbinding.SevenZipNativeInitializationException;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 
 /**
  * CBRPageSource - reads RAR archives and exposes pages as Bitmap
+ * Solid archives are read through a SolidPageStore (one sequential pass)
+ * instead of restarting decompression for every page. The pass is deferred
+ * until a page has to be extracted when every page is in PageDiskCache.
+ * The sorted page list is cached on disk (PageIndex) between opens.
  */
 public class CBRPageSource extends BitmapPageSource {
 
+    // Upper bound for the solid page store on disk
+    private static final long SOLID_STORE_MAX_BYTES = 512L * 1024L * 1024L;
+
+    private final Context appContext;
     private final ParcelFileDescriptor pfd;
     private final FileChannel channel;
-    private final MappedFileInStream inStream;
-    private final IInArchive archive;
-    private final List<Integer> imageIndices;
+    private final ArchiveHandlePool handles;
+
+    // Sorted pages, loaded from disk when this archive was opened before
+    private final String fingerprint;
+    private final PageIndex pageIndex;
+
+    // Only set for solid archives, started on open or on the first extraction
+    private final SolidPageStore solidStore;
+    private final int[] solidItems;
+    private boolean solidStarted = false;
 
     public CBRPageSource(Context context, android.net.Uri uri) throws IOException, SevenZipNativeInitializationException {
         super(context);
+        appContext = context.getApplicationContext();
         // Keep PFD alive for lifetime
         pfd = context.getContentResolver().openFileDescriptor(uri, "r");
         if (pfd == null) throw new RuntimeException("Cannot open CBR URI: " + uri);
 
         channel = new FileInputStream(pfd.getFileDescriptor()).getChannel();
-        inStream = new MappedFileInStream(channel);
-
-        SevenZip.initSevenZipFromPlatformJAR();
-        archive = SevenZip.openInArchive(null, inStream);
-
-        // Build index list of image items (alphabetical order)
-        List<Integer> indices = new ArrayList<>();
-        int numItems = archive.getNumberOfItems();
-        for (int i = 0; i < numItems; i++) {
-            Boolean isFolder = (Boolean) archive.getProperty(i, PropID.IS_FOLDER);
-            if (Boolean.TRUE.equals(isFolder)) continue;
-
-            String path = String.valueOf(archive.getProperty(i, PropID.PATH)).toLowerCase();
-            if (path.endsWith(".jpg") || path.endsWith(".jpeg") ||
-                    path.endsWith(".png") || path.endsWith(".webp")) {
-                indices.add(i);
-            }
-        }
-
-        // Sort alphabetically by path
-        indices.sort((a, b) -> {
-            String pa;
+        handles = new ArchiveHandlePool(channel,
+                SystemUtil.getRecommendedMappingBudget(context),
+                ArchiveHandlePool.recommendedSize(context));
+
+        // Reuse the stored page list, enumerate only on first open
+        fingerprint = FileFingerprint.of(context, uri);
+        PageIndex index = PageIndex.load(context, fingerprint);
+        if (index == null || index.getEngine() != PageIndex.ENGINE_SEVEN_ZIP) {
+            ArchiveHandlePool.Handle handle = acquireHandle();
             try {
-                pa = String.valueOf(archive.getProperty(a, PropID.PATH));
-            } catch (SevenZipException e) {
-                throw new RuntimeException(e);
+                index = PageIndex.fromArchive(handle.archive);
+            } finally {
+                handles.release(handle);
             }
-            String pb;
-            try {
-                pb = String.valueOf(archive.getProperty(b, PropID.PATH));
-            } catch (SevenZipException e) {
-                throw new RuntimeException(e);
-            }
-            return pa.compareTo(pb);
-        });
-
-        imageIndices = Collections.unmodifiableList(indices);
+            index.save(context, fingerprint);
+        }
+        pageIndex = index;
+
+        if (pageIndex.isSolid() && pageIndex.getPageCount() > 0) {
+            File cacheDir = context.getCacheDir();
+            long cap = Math.min(SOLID_STORE_MAX_BYTES, cacheDir.getUsableSpace() / 4);
+            solidStore = new SolidPageStore(cacheDir, cap, PriorityScheduler.get(context));
+
+            solidItems = new int[pageIndex.getPageCount()];
+            for (int i = 0; i < solidItems.length; i++) solidItems[i] = pageIndex.getItemIndex(i);
+            // Reopened comic shown before: pages come from the disk cache, don't spill the archive
+            if (!allPagesOnDisk()) startSolidPass();
+        } else {
+            solidStore = null;
+            solidItems = null;
+        }
     }
 
     @Override
     public int getPageCount() {
-        return imageIndices.size();
+        return pageIndex.getPageCount();
     }
 
     @Override
-    public synchronized Bitmap getPageBitmap(int index) {
-        Bitmap cached = getCached(index);
-        if (cached != null) return cached;
-        if (index < 0 || index >= imageIndices.size()) return null;
+    protected Bitmap decodePage(int index, PageDecoder.PreviewListener preview, CancellationSignal cancel) {
+        if (index < 0 || index >= pageIndex.getPageCount()) return null;
 
         try {
-            int itemIndex = imageIndices.get(index);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-            archive.extractSlow(itemIndex, data -> {
-                try {
-                    baos.write(data);
-                } catch (Exception e) {
-                    Log.e("CBRPageSource", "Error writing bytes", e);
-                }
-                return data.length;
-            });
-
-            byte[] bytes = baos.toByteArray();
+            PageBuffer page = readEncodedPage(index, cancel);
 
             BitmapFactory.Options opts = new BitmapFactory.Options();
-            opts.inSampleSize = calculateInSampleSizeForTarget(bytes.length);
-            opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
 
-            Bitmap bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts);
+            // Decoded in place, the pooled buffer goes back right after
+            Bitmap bmp;
+            try {
+                throwIfCancelled(cancel);
+                bmp = PageDecoder.decode(page.getData(), 0, page.getLength(), opts, decodeSizing, bitmapStrategy, preview);
+            } finally {
+                page.close();
+            }
+
             if (bmp != null) {
-                cache(index, bmp);
+                pageIndex.setDimensions(index, opts.outWidth, opts.outHeight);
                 return bmp;
             } else {
                 return createCorruptPlaceholder("Corrupt page " + index);
             }
 
         } catch (Exception e) {
+            // Aborted extraction, not a broken page
+            throwIfCancelled(cancel);
             Log.e("CBRPageSource", "Failed to decode page " + index, e);
             return createCorruptPlaceholder("Failed page " + index);
         }
     }
 
+    @Override
+    protected PageBuffer readEncodedPage(int index, CancellationSignal cancel) throws IOException {
+        int itemIndex = pageIndex.getItemIndex(index);
+
+        // Solid archives: served from the sequential pass when possible
+        PageBuffer page = null;
+        if (solidStore != null) {
+            startSolidPass();
+            try {
+                page = solidStore.read(itemIndex, cancel);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for solid pass");
+            }
+        }
+        return page != null ? page : extractItem(itemIndex, pageIndex.getSize(index), cancel);
+    }
+
+    // Source size from the header probe, known once the page was shown
+    @Override
+    public int[] getTileSourceSize(int index) {
+        int width = pageIndex.getWidth(index);
+        int height = pageIndex.getHeight(index);
+        return width > 0 && height > 0 ? new int[]{width, height} : null;
+    }
+
+    @Override
+    protected String getFingerprint() {
+        return fingerprint;
+    }
+
     @Override
     public void closeSource() {
+        // Persist page sizes learned while reading
+        if (pageIndex.isDirty()) executeInBackground(() -> pageIndex.save(appContext, fingerprint));
         super.closeSource();
-        try { archive.close(); } catch (Exception ignored) {}
-        try { inStream.close(); } catch (Exception ignored) {}
+        if (solidStore != null) solidStore.close();
+        handles.close();
         try { channel.close(); } catch (Exception ignored) {}
         try { pfd.close(); } catch (Exception ignored) {}
     }
 
     // ---------- Helper ----------
-    private int calculateInSampleSizeForTarget(int byteCount) {
-        if (byteCount > 5_000_000) return 4;
-        if (byteCount > 2_000_000) return 3;
-        if (byteCount > 800_000) return 2;
-        return 1;
+
+    private synchronized void startSolidPass() {
+        if (solidStarted) return;
+        solidStarted = true;
+        solidStore.start(handles, solidItems);
+    }
+
+    private boolean allPagesOnDisk() {
+        for (int i = 0; i < pageIndex.getPageCount(); i++) {
+            if (!isOnDisk(i)) return false;
+        }
+        return true;
+    }
+    // Extracts into a pooled buffer sized from the indexed uncompressed size
+    private PageBuffer extractItem(int itemIndex, long sizeHint, CancellationSignal cancel) throws IOException {
+        PageBuffer page = new PageBuffer(sizeHint, cancel);
+
+        // Only extraction needs an archive handle, decode runs unlocked
+        ArchiveHandlePool.Handle handle = null;
+        try {
+            handle = acquireHandle();
+            handle.archive.extractSlow(itemIndex, page);
+        } catch (IOException | RuntimeException e) {
+            page.close();
+            throw e;
+        } finally {
+            handles.release(handle);
+        }
+
+        return page;
+    }
+
+    private ArchiveHandlePool.Handle acquireHandle() throws IOException {
+        try {
+            return handles.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for archive handle");
+        }
     }
 }
 
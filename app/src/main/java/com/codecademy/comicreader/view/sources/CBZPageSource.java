@@ -3,136 +3,293 @@ package com.codecademy.comicreader.view.sources;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.CancellationSignal;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 
+import com.codecademy.comicreader.utils.FileFingerprint;
 import com.codecademy.comicreader.utils.MappedFileInStream;
+import com.codecademy.comicreader.utils.MappedZipFile;
+import com.codecademy.comicreader.utils.PageBuffer;
+import com.codecademy.comicreader.utils.SystemUtil;
 
 import net.sf.sevenzipjbinding.IInArchive;
 import net.sf.sevenzipjbinding.PropID;
-import net.sf.sevenzipjbinding.SevenZip;
 import net.sf.sevenzipjbinding.SevenZipException;
 import net.sf.sevenzipjbinding.SevenZipNativeInitializationException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
  * CBZPageSource - reads ZIP/CBZ archives and exposes pages as Bitmap
+ * Pages are located through the ZIP central directory (MappedZipFile):
+ * - STORED pages decode straight from the mapped file
+ * - DEFLATED pages inflate with a pooled Inflater
+ * 7-Zip is only used for entries (or archives) the Java reader can't handle.
+ * The sorted page list is cached on disk (PageIndex) between opens.
  */
 public class CBZPageSource extends BitmapPageSource {
 
+    private final Context appContext;
     private final ParcelFileDescriptor pfd;
+    private final FileChannel channel;
     private final MappedFileInStream inStream;
-    private final IInArchive archive;
-    private final List<Integer> imageIndices;
+    private final long mappingBudget;
+    private final int handleCount;
+
+    // Sorted pages, loaded from disk when this archive was opened before
+    private final String fingerprint;
+    private final PageIndex pageIndex;
+
+    // Java ZIP engine, null if the central directory couldn't be parsed
+    private final MappedZipFile zip;
+
+    // 7-Zip fallback, opened lazily
+    private ArchiveHandlePool handles;
+    private Map<String, Integer> archiveIndexByPath;
 
     public CBZPageSource(Context context, android.net.Uri uri) throws IOException, SevenZipNativeInitializationException {
         super(context);
+        appContext = context.getApplicationContext();
         // Keep PFD alive
         pfd = context.getContentResolver().openFileDescriptor(uri, "r");
         if (pfd == null) throw new RuntimeException("Cannot open CBZ URI: " + uri);
 
-        FileChannel channel = new FileInputStream(pfd.getFileDescriptor()).getChannel();
-        inStream = new MappedFileInStream(channel);
-
-        SevenZip.initSevenZipFromPlatformJAR();
-        archive = SevenZip.openInArchive(null, inStream);
-
-        // Build image indices
-        List<Integer> indices = new ArrayList<>();
-        int numItems = archive.getNumberOfItems();
-        for (int i = 0; i < numItems; i++) {
-            Boolean isFolder = (Boolean) archive.getProperty(i, PropID.IS_FOLDER);
-            if (Boolean.TRUE.equals(isFolder)) continue;
+        channel = new FileInputStream(pfd.getFileDescriptor()).getChannel();
+        mappingBudget = SystemUtil.getRecommendedMappingBudget(context);
+        handleCount = ArchiveHandlePool.recommendedSize(context);
+        inStream = new MappedFileInStream(channel, mappingBudget);
 
-            String path = String.valueOf(archive.getProperty(i, PropID.PATH)).toLowerCase();
-            if (path.endsWith(".jpg") || path.endsWith(".jpeg") ||
-                    path.endsWith(".png") || path.endsWith(".webp")) {
-                indices.add(i);
-            }
+        MappedZipFile parsed;
+        try {
+            parsed = new MappedZipFile(inStream);
+        } catch (IOException | RuntimeException e) {
+            Log.w("CBZPageSource", "Central directory unreadable, using 7-Zip", e);
+            parsed = null;
         }
+        zip = parsed;
 
-        // Sort alphabetically by path
-        indices.sort((a, b) -> {
-            String pa;
-            try {
-                pa = String.valueOf(archive.getProperty(a, PropID.PATH));
-            } catch (SevenZipException e) {
-                throw new RuntimeException(e);
+        // Reuse the stored page list, enumerate only on first open
+        fingerprint = FileFingerprint.of(context, uri);
+        PageIndex index = PageIndex.load(context, fingerprint);
+
+        if (zip != null) {
+            if (index == null || !matchesZip(index, zip)) {
+                index = PageIndex.fromZip(zip);
+                index.save(context, fingerprint);
             }
-            String pb;
+        } else if (index == null || index.getEngine() != PageIndex.ENGINE_SEVEN_ZIP) {
+            ArchiveHandlePool pool = getHandles();
+            ArchiveHandlePool.Handle handle = acquireHandle(pool);
             try {
-                pb = String.valueOf(archive.getProperty(b, PropID.PATH));
-            } catch (SevenZipException e) {
-                throw new RuntimeException(e);
+                index = PageIndex.fromArchive(handle.archive);
+            } finally {
+                pool.release(handle);
             }
-            return pa.compareTo(pb);
-        });
-
-        imageIndices = Collections.unmodifiableList(indices);
+            index.save(context, fingerprint);
+        }
+        pageIndex = index;
     }
 
     @Override
     public int getPageCount() {
-        return imageIndices.size();
+        return pageIndex.getPageCount();
     }
 
     @Override
-    public synchronized Bitmap getPageBitmap(int index) {
-        Bitmap cached = getCached(index);
-        if (cached != null) return cached;
-
-        if (index < 0 || index >= imageIndices.size()) {
+    protected Bitmap decodePage(int index, PageDecoder.PreviewListener preview, CancellationSignal cancel) {
+        if (index < 0 || index >= getPageCount()) {
             return createCorruptPlaceholder("Missing page " + index);
         }
 
         try {
-            int itemIndex = imageIndices.get(index);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-            archive.extractSlow(itemIndex, data -> {
-                try {
-                    baos.write(data);
-                } catch (Exception e) {
-                    Log.e("CBZPageSource", "Error writing bytes", e);
-                }
-                return data.length;
-            });
-
-            byte[] bytes = baos.toByteArray();
             BitmapFactory.Options opts = new BitmapFactory.Options();
-            opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
 
-            Bitmap bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts);
+            int itemIndex = pageIndex.getItemIndex(index);
+
+            MappedZipFile.Entry entry = zip != null ? zip.getEntries().get(itemIndex) : null;
+
+            Bitmap bmp;
+            if (entry != null && zip.isSupported(entry) && entry.getMethod() == MappedZipFile.METHOD_STORED) {
+                // No copy: decoder reads the mapped region directly
+                bmp = PageDecoder.decode(zip.getStoredData(entry), opts, decodeSizing, bitmapStrategy, preview);
+            } else {
+                PageBuffer page = readEncodedPage(index, cancel);
+                bmp = decodeBuffer(page, opts, preview, cancel);
+            }
+
             if (bmp != null) {
-                cache(index, bmp);
+                // Source size, the bitmap itself is fitted to the screen
+                pageIndex.setDimensions(index, opts.outWidth, opts.outHeight);
                 return bmp;
             } else {
                 return createCorruptPlaceholder("Corrupt page " + index);
             }
 
         } catch (Exception e) {
+            // Aborted extraction, not a broken page
+            throwIfCancelled(cancel);
             Log.e("CBZPageSource", "Failed to decode page " + index, e);
             return createCorruptPlaceholder("Failed page " + index);
         }
     }
 
+    @Override
+    protected PageBuffer readEncodedPage(int index, CancellationSignal cancel) throws IOException {
+        int itemIndex = pageIndex.getItemIndex(index);
+        if (zip == null) return extractWithSevenZip(itemIndex, pageIndex.getSize(index), cancel);
+
+        MappedZipFile.Entry entry = zip.getEntries().get(itemIndex);
+        if (!zip.isSupported(entry)) {
+            return extractWithSevenZip(archiveIndexFor(entry.getName()), entry.getSize(), cancel);
+        }
+
+        // Pooled buffer of the central-directory size
+        PageBuffer page = new PageBuffer(entry.getSize());
+        try {
+            if (entry.getMethod() == MappedZipFile.METHOD_STORED) {
+                ByteBuffer data = zip.getStoredData(entry);
+                int length = data.remaining();
+                data.get(page.getData(), 0, length);
+                page.setLength(length);
+            } else {
+                page.setLength(zip.inflate(entry, page.getData()));
+            }
+            return page;
+        } catch (IOException | RuntimeException e) {
+            page.close();
+            throw e;
+        }
+    }
+
+    // Source size from the header probe, known once the page was shown
+    @Override
+    public int[] getTileSourceSize(int index) {
+        int width = pageIndex.getWidth(index);
+        int height = pageIndex.getHeight(index);
+        return width > 0 && height > 0 ? new int[]{width, height} : null;
+    }
+
+    @Override
+    protected String getFingerprint() {
+        return fingerprint;
+    }
+
     @Override
     public void closeSource() {
+        // Persist page sizes learned while reading
+        if (pageIndex.isDirty()) executeInBackground(() -> pageIndex.save(appContext, fingerprint));
         super.closeSource();
-        try { archive.close(); } catch (Exception ignored) {}
+        synchronized (this) {
+            if (handles != null) handles.close();
+        }
         try { inStream.close(); } catch (Exception ignored) {}
         try { pfd.close(); } catch (Exception ignored) {}
     }
-}
 
+    // ---------- Helper ----------
+
+    // Decodes in place and returns the buffer to the pool
+    private Bitmap decodeBuffer(PageBuffer page, BitmapFactory.Options opts,
+                                PageDecoder.PreviewListener preview, CancellationSignal cancel) {
+        try {
+            throwIfCancelled(cancel);
+            return PageDecoder.decode(page.getData(), 0, page.getLength(), opts, decodeSizing, bitmapStrategy, preview);
+        } finally {
+            page.close();
+        }
+    }
+
+    private PageBuffer extractWithSevenZip(int itemIndex, long sizeHint, CancellationSignal cancel) throws IOException {
+        PageBuffer page = new PageBuffer(sizeHint, cancel);
+
+        // Only extraction needs an archive handle, decode runs unlocked
+        ArchiveHandlePool pool = null;
+        ArchiveHandlePool.Handle handle = null;
+        try {
+            pool = getHandles();
+            handle = acquireHandle(pool);
+            handle.archive.extractSlow(itemIndex, page);
+        } catch (IOException | RuntimeException e) {
+            page.close();
+            throw e;
+        } finally {
+            if (pool != null) pool.release(handle);
+        }
+
+        return page;
+    }
+
+    // Maps a ZIP entry name to its 7-Zip item index (for unsupported methods only).
+    private int archiveIndexFor(String name) throws IOException {
+        Map<String, Integer> byPath;
+        synchronized (this) {
+            byPath = archiveIndexByPath;
+        }
+
+        if (byPath == null) {
+            byPath = new HashMap<>();
+            ArchiveHandlePool pool = getHandles();
+            ArchiveHandlePool.Handle handle = acquireHandle(pool);
+            try {
+                IInArchive archive = handle.archive;
+                int numItems = archive.getNumberOfItems();
+                for (int i = 0; i < numItems; i++) {
+                    String path = String.valueOf(archive.getProperty(i, PropID.PATH));
+                    byPath.put(path.replace('\\', '/'), i);
+                }
+            } finally {
+                pool.release(handle);
+            }
+            synchronized (this) {
+                archiveIndexByPath = byPath;
+            }
+        }
+
+        Integer itemIndex = byPath.get(name);
+        if (itemIndex == null) throw new SevenZipException("Entry not found: " + name);
+        return itemIndex;
+    }
 
+    private synchronized ArchiveHandlePool getHandles() throws IOException {
+        if (handles == null) {
+            try {
+                handles = new ArchiveHandlePool(channel, mappingBudget, handleCount);
+            } catch (SevenZipNativeInitializationException e) {
+                throw new IOException("7-Zip unavailable", e);
+            }
+        }
+        return handles;
+    }
 
+    private static ArchiveHandlePool.Handle acquireHandle(ArchiveHandlePool pool) throws IOException {
+        try {
+            return pool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for archive handle");
+        }
+    }
+
+    // True if a stored ZIP index still lines up with the central directory
+    private static boolean matchesZip(PageIndex index, MappedZipFile zip) {
+        if (index.getEngine() != PageIndex.ENGINE_ZIP) return false;
+
+        List<MappedZipFile.Entry> entries = zip.getEntries();
+        for (int i = 0; i < index.getPageCount(); i++) {
+            int item = index.getItemIndex(i);
+            if (item < 0 || item >= entries.size()) return false;
+            if (!entries.get(item).getName().equals(index.getName(i))) return false;
+        }
+        return true;
+    }
+}
@@ -1,6 +1,7 @@
 package com.codecademy.comicreader.view.sources;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 
 import java.util.concurrent.Future;
 
@@ -19,7 +20,8 @@ public interface ComicPageSource {
     /**
      * Asynchronously loads a page Bitmap.
      * @param index Page index
-     * @param callback Called with the loaded Bitmap (can be null if failed)
+     * @param callback Called with the loaded Bitmap (can be null if failed),
+     *                 possibly after a low-resolution preview (onPreviewLoaded)
      * @return Future<?> representing the async task, can be cancelled
      */
     Future<?> loadPageAsync(int index, BitmapPageSource.PageCallback callback);
@@ -32,6 +34,43 @@ public interface ComicPageSource {
         // default no-op
     }
 
+    /**
+     * Page now shown, loads near it run first. Optional implementation.
+     * @param index Page index
+     */
+    default void setCurrentPage(int index) {
+        // default no-op
+    }
+
+    /**
+     * Full-resolution size of a page for tiled deep zoom. Optional implementation.
+     * @param index Page index
+     * @return {width, height} in source pixels, or null if tiles aren't available
+     */
+    default int[] getTileSourceSize(int index) {
+        return null;
+    }
+
+    /**
+     * Decodes one region of a page at full resolution divided by sampleSize.
+     * Called off the main thread. Optional implementation.
+     * @param index Page index
+     * @param region Region in source pixels (see getTileSourceSize)
+     * @param sampleSize Power of two, 1 = full resolution
+     * @return the tile, or null if it couldn't be decoded
+     */
+    default Bitmap decodeTile(int index, Rect region, int sampleSize) {
+        return null;
+    }
+
+    /**
+     * Releases cached pages under memory pressure. Optional implementation.
+     * @param level ComponentCallbacks2.TRIM_MEMORY_* level
+     */
+    default void trimMemory(int level) {
+        // default no-op
+    }
+
     // Closes the page source, releasing resources. Optional implementation.
     default void closeSource() {
         // default no-op
@@ -0,0 +1,129 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+
+/**
+ * DecodeSizing - how large a page is decoded, shared by all page sources.
+ * The target is the page fitted to the viewport (physical pixels, so
+ * density is included) times a zoom headroom, never larger than the source.
+ * Decoding then:
+ * 1. reads only the header (outWidth/outHeight)
+ * 2. subsamples by the largest power of two that stays above the target
+ * 3. scales the rest exactly to the target (inDensity/inTargetDensity)
+ * so a page never costs more than the target size, whatever the scan size.
+ */
+public final class DecodeSizing {
+
+    // Extra resolution kept for zooming in before the page gets blurry
+    public static final float ZOOM_HEADROOM = 1.5f;
+
+    // Deepest zoom of the viewer; finer detail than this is never shown
+    public static final float MAX_ZOOM = 6f;
+
+    private final int viewportShort;
+    private final int viewportLong;
+    private final float headroom;
+
+    public DecodeSizing(int viewportWidth, int viewportHeight, float headroom) {
+        this.viewportShort = Math.max(1, Math.min(viewportWidth, viewportHeight));
+        this.viewportLong = Math.max(1, Math.max(viewportWidth, viewportHeight));
+        this.headroom = headroom;
+    }
+
+    public static DecodeSizing forScreen(Context context) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        return new DecodeSizing(metrics.widthPixels, metrics.heightPixels, ZOOM_HEADROOM);
+    }
+
+    // Identifies the decode target, e.g. for disk cache keys
+    public String getKey() {
+        return viewportShort + "x" + viewportLong + "@" + headroom;
+    }
+
+    /**
+     * Scale that fits a width x height page on screen (orientation follows
+     * the page: portrait pages use the portrait viewport and vice versa).
+     */
+    public float fitScale(int width, int height) {
+        boolean landscape = width > height;
+        int boxWidth = landscape ? viewportLong : viewportShort;
+        int boxHeight = landscape ? viewportShort : viewportLong;
+        return Math.min(boxWidth / (float) width, boxHeight / (float) height);
+    }
+
+    /**
+     * Scale at which a width x height page has one pixel per screen pixel
+     * at MAX_ZOOM: the finest deep-zoom level worth rendering (vector pages).
+     */
+    public float maxZoomScale(int width, int height) {
+        return fitScale(width, height) * MAX_ZOOM;
+    }
+
+    // Scale of the decoded bitmap relative to the source, at most 1
+    public float decodeScale(int width, int height) {
+        return Math.min(1f, fitScale(width, height) * headroom);
+    }
+
+    /**
+     * Fills inSampleSize and the exact-scale densities for the source size
+     * in opts.outWidth/outHeight (from a bounds-only decode).
+     */
+    public void apply(BitmapFactory.Options opts) {
+        int width = opts.outWidth;
+        int height = opts.outHeight;
+        opts.inSampleSize = 1;
+        opts.inScaled = false;
+        opts.inDensity = 0;
+        opts.inTargetDensity = 0;
+        if (width <= 0 || height <= 0) return;
+
+        float scale = decodeScale(width, height);
+        int targetWidth = Math.max(1, Math.round(width * scale));
+        int targetHeight = Math.max(1, Math.round(height * scale));
+
+        opts.inSampleSize = sampleSizeFor(width, height, targetWidth, targetHeight);
+
+        int sampledWidth = ceilDiv(width, opts.inSampleSize);
+        if (sampledWidth > targetWidth) {
+            // Remaining factor (< 2) applied by the decoder
+            opts.inScaled = true;
+            opts.inDensity = sampledWidth;
+            opts.inTargetDensity = targetWidth;
+        }
+    }
+
+    // Largest power of two that keeps both sides at or above the target
+    public static int sampleSizeFor(int width, int height, int targetWidth, int targetHeight) {
+        int sample = 1;
+        while (width / (sample * 2) >= targetWidth && height / (sample * 2) >= targetHeight) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * Size of the bitmap the decoder will produce for these options.
+     *
+     * @return {width, height}
+     */
+    public static int[] decodedSize(BitmapFactory.Options opts) {
+        // The decoder rounds inSampleSize down to a power of two
+        int sample = Integer.highestOneBit(Math.max(1, opts.inSampleSize));
+        int width = ceilDiv(opts.outWidth, sample);
+        int height = ceilDiv(opts.outHeight, sample);
+
+        if (opts.inScaled && opts.inDensity > 0 && opts.inTargetDensity > 0
+                && opts.inDensity != opts.inTargetDensity) {
+            float scale = opts.inTargetDensity / (float) opts.inDensity;
+            width = (int) (width * scale + 0.5f);
+            height = (int) (height * scale + 0.5f);
+        }
+        return new int[]{width, height};
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,135 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+import java.nio.ByteBuffer;
+
+/**
+ * GrayscalePages - detects black-and-white pages and stores them as ALPHA_8.
+ * The alpha channel holds the luminance (1 byte per pixel instead of 4);
+ * GrayscalePageDrawable turns it back into gray when drawn.
+ * Detection:
+ * - header: JPEG with one component, PNG with color type 0 (decode
+ *   straight to ALPHA_8)
+ * - sampling: color-encoded pages whose pixels are all (nearly) gray,
+ *   typical for scans saved as YCbCr JPEG (converted after decoding)
+ */
+public final class GrayscalePages {
+
+    // Grid of sampled pixels per side
+    private static final int SAMPLE_GRID = 64;
+
+    // Max channel spread that still counts as gray (JPEG chroma noise)
+    private static final int GRAY_TOLERANCE = 24;
+
+    // Share of colored samples a gray page may have (specks, noise), in 1/1000
+    private static final int MAX_COLORED_PER_MILLE = 5;
+
+    private static final int HEADER_SCAN_LIMIT = 64 * 1024;
+
+    // A' = 0.299 R + 0.587 G + 0.114 B
+    private static final ColorMatrix LUMINANCE_TO_ALPHA = new ColorMatrix(new float[]{
+            0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0,
+            0.299f, 0.587f, 0.114f, 0, 0});
+
+    private GrayscalePages() {}
+
+    /**
+     * True if the image header declares a single gray channel without alpha.
+     */
+    public static boolean isGrayscaleHeader(ByteBuffer data) {
+        ByteBuffer buffer = data.duplicate();
+        int start = buffer.position();
+        int limit = Math.min(buffer.limit(), start + HEADER_SCAN_LIMIT);
+        if (limit - start < 26) return false;
+
+        // PNG: IHDR color type at byte 25
+        if ((buffer.get(start) & 0xFF) == 0x89 && buffer.get(start + 1) == 'P'
+                && buffer.get(start + 2) == 'N' && buffer.get(start + 3) == 'G') {
+            return buffer.get(start + 25) == 0;
+        }
+
+        // JPEG: component count of the first SOF segment
+        if ((buffer.get(start) & 0xFF) != 0xFF || (buffer.get(start + 1) & 0xFF) != 0xD8) return false;
+        int pos = start + 2;
+        while (pos + 9 < limit) {
+            if ((buffer.get(pos) & 0xFF) != 0xFF) return false;
+            int marker = buffer.get(pos + 1) & 0xFF;
+            if (marker == 0xFF) { pos++; continue; } // fill byte
+            int length = ((buffer.get(pos + 2) & 0xFF) << 8) | (buffer.get(pos + 3) & 0xFF);
+
+            boolean sof = marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (sof) return (buffer.get(pos + 9) & 0xFF) == 1;
+            if (marker == 0xDA || length < 2) return false; // image data before any SOF
+            pos += 2 + length;
+        }
+        return false;
+    }
+
+    /**
+     * Samples a grid of pixels and reports whether the page is gray.
+     */
+    public static boolean looksGray(Bitmap bitmap) {
+        // Hardware pixels can't be read back
+        Bitmap.Config config = bitmap.getConfig();
+        if (config == Bitmap.Config.ALPHA_8 || config == Bitmap.Config.HARDWARE || bitmap.hasAlpha()) return false;
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int columns = Math.min(SAMPLE_GRID, width);
+        int rows = Math.min(SAMPLE_GRID, height);
+        int[] row = new int[width];
+
+        int colored = 0;
+        int maxColored = Math.max(1, columns * rows * MAX_COLORED_PER_MILLE / 1000);
+        for (int r = 0; r < rows; r++) {
+            int y = (int) ((r + 0.5f) * height / rows);
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+
+            for (int c = 0; c < columns; c++) {
+                int pixel = row[(int) ((c + 0.5f) * width / columns)];
+                int red = (pixel >> 16) & 0xFF;
+                int green = (pixel >> 8) & 0xFF;
+                int blue = pixel & 0xFF;
+                int spread = Math.max(red, Math.max(green, blue)) - Math.min(red, Math.min(green, blue));
+                if (spread > GRAY_TOLERANCE && ++colored > maxColored) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the luminance of a color bitmap into a (pooled) ALPHA_8 bitmap.
+     */
+    public static Bitmap toAlpha8(Bitmap color) {
+        Bitmap gray = BitmapPool.obtain(color.getWidth(), color.getHeight(), Bitmap.Config.ALPHA_8);
+
+        Paint paint = new Paint();
+        paint.setColorFilter(new ColorMatrixColorFilter(LUMINANCE_TO_ALPHA));
+        new Canvas(gray).drawBitmap(color, 0f, 0f, paint);
+        return gray;
+    }
+
+    /**
+     * Expands an ALPHA_8 page back to opaque gray (pooled ARGB_8888), for
+     * encoders that don't know the luminance-in-alpha layout.
+     */
+    public static Bitmap toOpaqueGray(Bitmap alpha8) {
+        Bitmap color = BitmapPool.obtain(alpha8.getWidth(), alpha8.getHeight(), Bitmap.Config.ARGB_8888);
+
+        Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        Canvas canvas = new Canvas(color);
+        canvas.drawColor(Color.BLACK);
+        canvas.drawBitmap(alpha8, 0f, 0f, paint);
+        return color;
+    }
+}
@@ -2,76 +2,296 @@ package com.codecademy.comicreader.view.sources;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.graphics.Rect;
 import android.graphics.pdf.PdfRenderer;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
+import com.codecademy.comicreader.utils.FileFingerprint;
+import com.codecademy.comicreader.utils.MappedFileInStream;
+import com.codecademy.comicreader.utils.PageBuffer;
+import com.codecademy.comicreader.utils.PdfImagePages;
+import com.codecademy.comicreader.utils.SystemUtil;
+
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
  * PDFPageSource - exposes PDF pages as Bitmaps
+ * Pages and tiles share one renderer (PdfRendererPool: pdfium renders one page
+ * at a time per process); targets are allocated and display copies made
+ * outside it, and JPEG pages don't use it at all.
+ * Pages are rasterized at the size they're shown (viewport pixels); zoomed
+ * views re-render only the visible tiles through the render transform, at
+ * the zoom level's power-of-two bucket, up to one pixel per screen pixel at
+ * DecodeSizing.MAX_ZOOM. Tiles are cached per bucket by the viewer (TileCache).
+ * Scanned pages that are one full-page JPEG (PdfImagePages) skip the renderer:
+ * the JPEG is decoded from the mapped file like a CBZ page, tiles included.
  */
 public class PDFPageSource extends BitmapPageSource {
 
     private final ParcelFileDescriptor pfd;
-    private final PdfRenderer renderer;
+    private final PdfRendererPool renderers;
+    private final String fingerprint;
+
+    // Mapped file and its single-JPEG pages, null if none (or unparseable)
+    private final MappedFileInStream mapped;
+    private final PdfImagePages imagePages;
+
+    // Page sizes in points, recorded on first render (read from the UI thread)
+    private final Map<Integer, int[]> pageSizes = new ConcurrentHashMap<>();
 
     public PDFPageSource(Context context, android.net.Uri uri) throws IOException {
         super(context);
         pfd = context.getContentResolver().openFileDescriptor(uri, "r");
         if (pfd == null) throw new IllegalArgumentException("Unable to open PDF Uri: " + uri);
 
-        renderer = new PdfRenderer(pfd);
+        renderers = new PdfRendererPool(pfd);
+        fingerprint = FileFingerprint.of(context, uri);
+
+        mapped = new MappedFileInStream(new FileInputStream(pfd.getFileDescriptor()).getChannel(),
+                SystemUtil.getRecommendedMappingBudget(context));
+        imagePages = findImagePages(mapped, renderers.getPageCount());
+    }
+
+    // Optional fast path: any parse problem just means every page is rendered
+    private static PdfImagePages findImagePages(MappedFileInStream mapped, int pageCount) {
+        try {
+            PdfImagePages pages = PdfImagePages.parse(mapped, pageCount);
+            // Disagreeing with pdfium means the parse is wrong somewhere
+            if (pages != null && pages.getPageCount() != pageCount) {
+                Log.w("PDFPageSource", "Page tree mismatch, rendering all pages");
+                return null;
+            }
+            return pages;
+        } catch (IOException | RuntimeException e) {
+            Log.w("PDFPageSource", "PDF structure not parsed, rendering all pages", e);
+            return null;
+        }
     }
 
     @Override
     public int getPageCount() {
-        return renderer.getPageCount();
+        return renderers.getPageCount();
     }
 
+    // Image pages decode their JPEG (with a preview), others are rendered without
+    // one: rendering cost depends on the page content, not the bitmap size.
+    // A load cancelled while waiting for a free renderer is skipped.
     @Override
-    public synchronized Bitmap getPageBitmap(int index) {
-        Bitmap cached = getCached(index);
-        if (cached != null) return cached;
+    protected Bitmap decodePage(int index, PageDecoder.PreviewListener preview, CancellationSignal cancel) {
+        if (isImagePage(index)) {
+            Bitmap bmp = decodeImagePage(index, preview, cancel);
+            if (bmp != null) return bmp;
+        }
+
+        Bitmap bmp;
+        try {
+            bmp = renderPage(index, cancel);
+        } catch (OperationCanceledException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.e("PDFPageSource", "Error rendering page " + index, e);
+            return createCorruptPlaceholder("Error page " + index);
+        }
+        if (bmp == null) return createCorruptPlaceholder("Invalid page " + index);
+
+        // render() can't be interrupted, skip the display copy at least
+        if (cancel != null && cancel.isCanceled()) {
+            BitmapPool.giveBack(bmp);
+            throw new OperationCanceledException();
+        }
+
+        // PdfRenderer needs ARGB_8888, the shown page may be a hardware copy.
+        // Not opaque: pages without a background stay transparent.
+        // Made after release, the next page renders meanwhile.
+        return bitmapStrategy.toDisplay(bmp, false);
+    }
 
+    // Holds the renderer only for openPage() + render(); null if the page has no size
+    private Bitmap renderPage(int index, CancellationSignal cancel) throws IOException {
+        // Size known from an earlier render: target obtained before waiting for the renderer
+        int[] known = pageSizes.get(index);
+        Bitmap bmp = known != null ? obtainTarget(known) : null;
+
+        PdfRenderer renderer = null;
         PdfRenderer.Page page = null;
         try {
+            renderer = acquireRenderer(cancel);
+            throwIfCancelled(cancel);
             page = renderer.openPage(index);
-            int width = page.getWidth();
-            int height = page.getHeight();
+            int[] size = {page.getWidth(), page.getHeight()};
+            if (size[0] <= 0 || size[1] <= 0) return null;
+            pageSizes.put(index, size);
 
-            if (width <= 0 || height <= 0) {
-                return createCorruptPlaceholder("Invalid page " + index);
+            if (bmp == null || !Arrays.equals(size, known)) {
+                BitmapPool.giveBack(bmp);
+                bmp = obtainTarget(size);
             }
+            page.render(bmp, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
 
-            int maxSize = 1280;
-            float scale = Math.min(maxSize / (float) width, maxSize / (float) height);
-            int scaledWidth = Math.max(1, (int) (width * scale));
-            int scaledHeight = Math.max(1, (int) (height * scale));
+            Bitmap rendered = bmp;
+            bmp = null;
+            return rendered;
+        } finally {
+            if (page != null) {
+                try { page.close(); } catch (Exception ignored) {}
+            }
+            renderers.release(renderer);
+            BitmapPool.giveBack(bmp);
+        }
+    }
 
-            Bitmap bmp = Bitmap.createBitmap(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
-            page.render(bmp, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+    // Vector page: rendered at the size it's shown, fitted to the screen.
+    // Reuses the memory of an evicted page when one fits.
+    private Bitmap obtainTarget(int[] size) {
+        float scale = decodeSizing.fitScale(size[0], size[1]);
+        int scaledWidth = Math.max(1, (int) (size[0] * scale));
+        int scaledHeight = Math.max(1, (int) (size[1] * scale));
+        return BitmapPool.obtain(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
+    }
 
-            cache(index, bmp);
-            return bmp;
+    @Override
+    protected String getFingerprint() {
+        return fingerprint;
+    }
+
+    // Not rendered this session: the page size is still needed for tiles
+    @Override
+    protected void onPageRestored(int index) {
+        if (isImagePage(index)) return;
 
+        PdfRenderer renderer = null;
+        try {
+            renderer = acquireRenderer(null);
+            try (PdfRenderer.Page page = renderer.openPage(index)) {
+                pageSizes.put(index, new int[]{page.getWidth(), page.getHeight()});
+            }
         } catch (Exception e) {
-            Log.e("PDFPageSource", "Error rendering page " + index, e);
-            return createCorruptPlaceholder("Error page " + index);
+            Log.w("PDFPageSource", "Can't read size of page " + index, e);
+        } finally {
+            renderers.release(renderer);
+        }
+    }
+
+    @Override
+    public int[] getTileSourceSize(int index) {
+        // Image pages zoom into the JPEG's own pixels
+        if (isImagePage(index)) return imagePages.getImageSize(index);
+
+        int[] size = pageSizes.get(index);
+        if (size == null) return null;
+        float scale = tilePixelsPerPoint(size);
+        return new int[]{(int) Math.ceil(size[0] * scale), (int) Math.ceil(size[1] * scale)};
+    }
+
+    // Full tile resolution of a page: follows the screen, so tablets get more pixels
+    private float tilePixelsPerPoint(int[] size) {
+        return decodeSizing.maxZoomScale(size[0], size[1]);
+    }
+
+    // Image pages: region-decoded from the JPEG (readEncodedPage).
+    // Others render only the region: the transform maps it onto the tile bitmap, the rest is clipped
+    @Override
+    public Bitmap decodeTile(int index, Rect region, int sampleSize) {
+        if (isImagePage(index)) return super.decodeTile(index, region, sampleSize);
+
+        PdfRenderer renderer = null;
+        PdfRenderer.Page page = null;
+        try {
+            // Allocated before taking the renderer
+            int width = Math.max(1, (region.width() + sampleSize - 1) / sampleSize);
+            int height = Math.max(1, (region.height() + sampleSize - 1) / sampleSize);
+            Bitmap tile = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+            renderer = acquireRenderer(null);
+            page = renderer.openPage(index);
+            int[] size = pageSizes.get(index);
+            if (size == null) {
+                size = new int[]{page.getWidth(), page.getHeight()};
+                pageSizes.put(index, size);
+            }
+
+            float scale = tilePixelsPerPoint(size) / sampleSize;
+            Matrix transform = new Matrix();
+            transform.setScale(scale, scale);
+            transform.postTranslate(-region.left / (float) sampleSize, -region.top / (float) sampleSize);
+
+            page.render(tile, null, transform, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+            return tile;
+
+        } catch (Exception e) {
+            Log.w("PDFPageSource", "Error rendering tile of page " + index, e);
+            return null;
         } finally {
             if (page != null) {
                 try { page.close(); } catch (Exception ignored) {}
             }
+            renderers.release(renderer);
         }
     }
 
+    // The page's JPEG, for region decoding of image pages only
+    @Override
+    protected PageBuffer readEncodedPage(int index, CancellationSignal cancel) throws IOException {
+        ByteBuffer jpeg = isImagePage(index) ? imagePages.getJpeg(index) : null;
+        if (jpeg == null) return null;
+
+        int length = jpeg.remaining();
+        PageBuffer page = new PageBuffer(length, cancel);
+        jpeg.get(page.getData(), 0, length);
+        page.setLength(length);
+        return page;
+    }
+
     @Override
     public void closeSource() {
         super.closeSource();
-        try { renderer.close(); } catch (Exception ignored) {}
+        renderers.close();
+        try { mapped.close(); } catch (Exception ignored) {}
         try { pfd.close(); } catch (Exception ignored) {}
     }
+
+    // ---------- Helper ----------
+
+    private boolean isImagePage(int index) {
+        return imagePages != null && imagePages.isImagePage(index);
+    }
+
+    // Decoded straight from the mapped file; null falls back to the renderer
+    private Bitmap decodeImagePage(int index, PageDecoder.PreviewListener preview, CancellationSignal cancel) {
+        try {
+            throwIfCancelled(cancel);
+            BitmapFactory.Options opts = new BitmapFactory.Options();
+            Bitmap bmp = PageDecoder.decode(imagePages.getJpeg(index), opts, decodeSizing, bitmapStrategy, preview);
+            if (bmp == null) Log.w("PDFPageSource", "Undecodable JPEG on page " + index + ", rendering it");
+            return bmp;
+        } catch (OperationCanceledException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.w("PDFPageSource", "Failed to decode JPEG of page " + index + ", rendering it", e);
+            return null;
+        }
+    }
+
+    // Cancelled loads leave the wait through their signal; interrupts only come from shutdown
+    private PdfRenderer acquireRenderer(CancellationSignal cancel) throws IOException {
+        try {
+            return renderers.acquire(cancel);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException("Interrupted waiting for a renderer");
+        }
+    }
 }
 
 
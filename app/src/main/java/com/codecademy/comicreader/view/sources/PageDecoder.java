@@ -0,0 +1,160 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.codecademy.comicreader.utils.ByteBufferInputStream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PageDecoder - shared BitmapFactory entry point for page sources.
+ * Reads the image header first, sizes the decode with DecodeSizing, then
+ * decodes into a free bitmap of the BitmapPool (inBitmap) when one of a
+ * fitting size is available. Decoded bitmaps are mutable so they can be
+ * reused in turn.
+ * The config comes from BitmapConfigStrategy (HARDWARE pages skip the pool),
+ * black-and-white pages come back as ALPHA_8 (see GrayscalePages).
+ * Large pages can hand out a 1/8 preview first (PreviewListener).
+ * On return opts.outWidth/outHeight hold the source size of the image.
+ */
+public final class PageDecoder {
+
+    // Preview scale: JPEG decodes this from the DC coefficients only, in milliseconds
+    public static final int PREVIEW_SAMPLE = 8;
+
+    // Smaller pages decode fast enough without a preview
+    private static final long PREVIEW_MIN_PIXELS = 2_000_000L;
+
+    private PageDecoder() {}
+
+    public static Bitmap decode(byte[] data, int offset, int length,
+                                BitmapFactory.Options opts, DecodeSizing sizing,
+                                BitmapConfigStrategy strategy, PreviewListener preview) {
+        return decode(opts, sizing, strategy, preview, ByteBuffer.wrap(data, offset, length),
+                () -> BitmapFactory.decodeByteArray(data, offset, length, opts));
+    }
+
+    // Decodes straight from a (mapped) buffer without copying it.
+    public static Bitmap decode(ByteBuffer data, BitmapFactory.Options opts, DecodeSizing sizing,
+                                BitmapConfigStrategy strategy, PreviewListener preview) {
+        return decode(opts, sizing, strategy, preview, data,
+                () -> BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, opts));
+    }
+
+    private static Bitmap decode(BitmapFactory.Options opts, DecodeSizing sizing, BitmapConfigStrategy strategy,
+                                 PreviewListener preview, ByteBuffer header, Decode decode) {
+        // Header only
+        opts.inJustDecodeBounds = true;
+        decode.run();
+        opts.inJustDecodeBounds = false;
+
+        int sourceWidth = opts.outWidth;
+        int sourceHeight = opts.outHeight;
+
+        // JPEG has no alpha, so it may go to RGB_565
+        boolean opaque = "image/jpeg".equals(opts.outMimeType);
+        Bitmap.Config config = strategy != null ? strategy.displayConfig(opaque) : opts.inPreferredConfig;
+
+        if (preview != null && (long) sourceWidth * sourceHeight >= PREVIEW_MIN_PIXELS) {
+            previewPass(opts, strategy != null ? strategy.softwareConfig(opaque) : config, preview, decode);
+        }
+
+        if (sizing != null) sizing.apply(opts);
+        opts.inPreferredConfig = config;
+        boolean hardware = config == Bitmap.Config.HARDWARE;
+
+        // Gray JPEG/PNG decode straight to 8 bits (hardware pages are off the heap anyway)
+        if (!hardware && GrayscalePages.isGrayscaleHeader(header)) opts.inPreferredConfig = Bitmap.Config.ALPHA_8;
+
+        Bitmap result = decodePooled(opts, decode);
+        if (result == null && hardware) {
+            // No hardware bitmap for this image, decode in software
+            opts.inPreferredConfig = strategy.softwareConfig(opaque);
+            result = decodePooled(opts, decode);
+        }
+
+        // A full decode overwrites these with the decoded size
+        opts.outWidth = sourceWidth;
+        opts.outHeight = sourceHeight;
+
+        // Gray pages stored in color: keep only the luminance
+        if (result != null && result.getConfig() != Bitmap.Config.ALPHA_8 && GrayscalePages.looksGray(result)) {
+            Bitmap gray = GrayscalePages.toAlpha8(result);
+            BitmapPool.giveBack(result);
+            result = gray;
+        }
+        return result;
+    }
+
+    // Decodes and delivers the 1/8 preview, leaving opts as they were
+    private static void previewPass(BitmapFactory.Options opts, Bitmap.Config config,
+                                    PreviewListener preview, Decode decode) {
+        int sourceWidth = opts.outWidth;
+        int sourceHeight = opts.outHeight;
+        int sampleSize = opts.inSampleSize;
+        boolean scaled = opts.inScaled;
+
+        // Shown for the few frames the full decode takes, kept in software
+        opts.inSampleSize = PREVIEW_SAMPLE;
+        opts.inScaled = false;
+        opts.inPreferredConfig = config;
+        Bitmap small = decodePooled(opts, decode);
+
+        opts.outWidth = sourceWidth;
+        opts.outHeight = sourceHeight;
+        opts.inSampleSize = sampleSize;
+        opts.inScaled = scaled;
+        if (small != null) preview.onPreview(small);
+    }
+
+    // Decodes into a pooled bitmap when one fits, otherwise into a new one
+    private static Bitmap decodePooled(BitmapFactory.Options opts, Decode decode) {
+        Bitmap reuse = prepareReuse(opts);
+        Bitmap result;
+        try {
+            result = decode.run();
+        } catch (IllegalArgumentException e) {
+            // inBitmap didn't fit after all, decode into a new bitmap
+            if (reuse == null) throw e;
+            Log.w("PageDecoder", "Bitmap reuse failed, allocating");
+            opts.inBitmap = null;
+            BitmapPool.giveBack(reuse);
+            reuse = null;
+            result = decode.run();
+        }
+
+        opts.inBitmap = null;
+        // Failed decode: the reused bitmap is still free
+        if (reuse != null && result != reuse) BitmapPool.giveBack(reuse);
+        return result;
+    }
+
+    // Picks a pooled bitmap for the size the decoder will produce
+    private static Bitmap prepareReuse(BitmapFactory.Options opts) {
+        opts.inBitmap = null;
+        // Hardware bitmaps are immutable and never pooled
+        opts.inMutable = opts.inPreferredConfig != Bitmap.Config.HARDWARE;
+        if (!opts.inMutable || opts.outWidth <= 0 || opts.outHeight <= 0) return null;
+
+        int[] size = DecodeSizing.decodedSize(opts);
+        Bitmap.Config config = opts.inPreferredConfig != null ? opts.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        Bitmap reuse = BitmapPool.takeReusable(size[0], size[1], config);
+        opts.inBitmap = reuse;
+        return reuse;
+    }
+
+    /**
+     * Receives the low-resolution preview of a page on the decoding thread,
+     * before the full decode starts. The bitmap isn't referenced in the
+     * BitmapPool yet: retain it to keep it.
+     */
+    public interface PreviewListener {
+        void onPreview(Bitmap preview);
+    }
+
+    private interface Decode {
+        Bitmap run();
+    }
+}
@@ -0,0 +1,137 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.codecademy.comicreader.utils.ByteArrayPool;
+import com.codecademy.comicreader.utils.FileFingerprint;
+import com.codecademy.comicreader.utils.LruFileCache;
+import com.codecademy.comicreader.utils.PriorityScheduler;
+import com.codecademy.comicreader.utils.SystemUtil;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * PageDiskCache - second-level page cache under the app cache dir.
+ * Stores pages as shown (already fitted to the screen), so reopening a
+ * comic reads a small image instead of extracting and decoding the scan
+ * again. Keyed by FileFingerprint + page index + decode target size.
+ * - opaque pages: JPEG, gray (ALPHA_8) pages expanded to gray first
+ * - pages with alpha (PDF): PNG
+ * Files live in an LruFileCache (byte cap, LRU order). Writes run one at
+ * a time in the scheduler's IO lane; pages are skipped while it's busy.
+ */
+public final class PageDiskCache {
+
+    private static final String TAG = "PageDiskCache";
+    private static final String DIR_NAME = "pages";
+    private static final String SUFFIX = ".page";
+    private static final int JPEG_QUALITY = 90;
+
+    // Each queued write holds a page bitmap, so keep the queue short
+    private static final int MAX_PENDING_WRITES = 2;
+
+    private static PageDiskCache instance;
+
+    private final LruFileCache files;
+    private final ExecutorService writer;
+
+    // Keys queued or being written
+    private final Set<String> pending = new HashSet<>();
+
+    public PageDiskCache(File dir, long maxBytes, ExecutorService writer) {
+        this.files = new LruFileCache(dir, maxBytes, SUFFIX);
+        this.writer = writer;
+    }
+
+    // Shared instance, capped by SystemUtil.getRecommendedPageDiskCacheBytes()
+    public static synchronized PageDiskCache get(Context context) {
+        if (instance == null) {
+            instance = new PageDiskCache(new File(context.getCacheDir(), DIR_NAME),
+                    SystemUtil.getRecommendedPageDiskCacheBytes(context),
+                    PriorityScheduler.get(context).newGroup(PriorityScheduler.Lane.IO,
+                            PriorityScheduler.Priority.PREFETCH, 1));
+        }
+        return instance;
+    }
+
+    /**
+     * Cache key of a page, null if the file has no fingerprint.
+     * @param target decode target (DecodeSizing.getKey())
+     */
+    public static String key(String fingerprint, int page, String target) {
+        if (fingerprint == null) return null;
+        return FileFingerprint.hash(fingerprint + "|" + page + "|" + target);
+    }
+
+    // True if the page is stored (doesn't count as a use)
+    public boolean contains(String key) {
+        return key != null && files.contains(key);
+    }
+
+    /**
+     * Reads a cached page, or null. Decoded through PageDecoder, so the
+     * result follows the bitmap strategy and reuses pooled memory.
+     */
+    public Bitmap read(String key, DecodeSizing sizing, BitmapConfigStrategy strategy) {
+        if (key == null) return null;
+        File file = files.get(key);
+        if (file == null) return null;
+
+        byte[] data = null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            int length = (int) file.length();
+            data = ByteArrayPool.acquire(length);
+            in.readFully(data, 0, length);
+            return PageDecoder.decode(data, 0, length, new BitmapFactory.Options(), sizing, strategy, null);
+
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable page " + file.getName(), e);
+            files.remove(key);
+            return null;
+        } finally {
+            ByteArrayPool.release(data);
+        }
+    }
+
+    /**
+     * Queues a page for writing. Takes a BitmapPool reference until written,
+     * so the caller may release the bitmap right away.
+     */
+    public void write(String key, Bitmap page) {
+        if (key == null || page == null || page.isRecycled()) return;
+        if (files.contains(key)) return;
+
+        synchronized (pending) {
+            if (pending.size() >= MAX_PENDING_WRITES || !pending.add(key)) return;
+        }
+
+        BitmapPool.retain(page);
+        writer.execute(() -> {
+            // JPEG would flatten the luminance-in-alpha to black
+            Bitmap encoded = page.getConfig() == Bitmap.Config.ALPHA_8 ? GrayscalePages.toOpaqueGray(page) : page;
+            try {
+                files.put(key, out -> {
+                    boolean ok = encoded.hasAlpha()
+                            ? encoded.compress(Bitmap.CompressFormat.PNG, 100, out)
+                            : encoded.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+                    if (!ok) throw new IOException("Compress failed");
+                });
+            } finally {
+                if (encoded != page) BitmapPool.giveBack(encoded);
+                BitmapPool.release(page);
+                synchronized (pending) {
+                    pending.remove(key);
+                }
+            }
+        });
+    }
+}
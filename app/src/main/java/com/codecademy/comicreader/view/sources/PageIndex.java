@@ -0,0 +1,291 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.codecademy.comicreader.utils.MappedZipFile;
+import com.codecademy.comicreader.utils.NaturalOrder;
+
+import net.sf.sevenzipjbinding.IInArchive;
+import net.sf.sevenzipjbinding.PropID;
+import net.sf.sevenzipjbinding.SevenZipException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * PageIndex - compact, persistent page list for one archive.
+ * Stores the sorted pages with their archive item indices, uncompressed
+ * sizes and (once decoded) pixel dimensions, keyed by FileFingerprint.
+ * Reopening a comic loads this in one read instead of enumerating the
+ * archive through JNI.
+ */
+public final class PageIndex {
+
+    // Which item numbering the indices refer to
+    public static final int ENGINE_SEVEN_ZIP = 0;
+    public static final int ENGINE_ZIP = 1;
+
+    private static final String TAG = "PageIndex";
+    private static final String DIR_NAME = "page_index";
+    private static final int MAGIC = 0x43525049; // "CRPI"
+    private static final int VERSION = 2; // 2: natural page order
+    private static final int MAX_INDEX_FILES = 200;
+
+    // magic, version, engine, solid, count
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 1 + 4;
+    // Empty name (UTF length only), item, size, width, height
+    private static final int MIN_RECORD_SIZE = 2 + 4 + 8 + 4 + 4;
+
+    private final int engine;
+    private final boolean solid;
+    private final String[] names;
+    private final int[] itemIndices;
+    private final long[] sizes;
+    private final int[] widths;
+    private final int[] heights;
+
+    private boolean dirty;
+
+    private PageIndex(int engine, boolean solid, List<String> names, List<Integer> itemIndices, List<Long> sizes) {
+        int count = names.size();
+        this.engine = engine;
+        this.solid = solid;
+        this.names = names.toArray(new String[0]);
+        this.itemIndices = new int[count];
+        this.sizes = new long[count];
+        for (int i = 0; i < count; i++) {
+            this.itemIndices[i] = itemIndices.get(i);
+            this.sizes[i] = sizes.get(i);
+        }
+        this.widths = new int[count];
+        this.heights = new int[count];
+        this.dirty = true;
+    }
+
+    private PageIndex(int engine, boolean solid, String[] names, int[] itemIndices,
+                      long[] sizes, int[] widths, int[] heights) {
+        this.engine = engine;
+        this.solid = solid;
+        this.names = names;
+        this.itemIndices = itemIndices;
+        this.sizes = sizes;
+        this.widths = widths;
+        this.heights = heights;
+    }
+
+    public int getEngine() { return engine; }
+    public boolean isSolid() { return solid; }
+    public int getPageCount() { return names.length; }
+    public String getName(int page) { return names[page]; }
+    public int getItemIndex(int page) { return itemIndices[page]; }
+    public long getSize(int page) { return sizes[page]; }
+
+    // Pixel size of the page, 0 if it hasn't been decoded yet.
+    public synchronized int getWidth(int page) { return widths[page]; }
+    public synchronized int getHeight(int page) { return heights[page]; }
+
+    // Records the original pixel size of a page once it's known.
+    public synchronized void setDimensions(int page, int width, int height) {
+        if (page < 0 || page >= names.length) return;
+        if (widths[page] == width && heights[page] == height) return;
+        widths[page] = width;
+        heights[page] = height;
+        dirty = true;
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    // ---------- Building ----------
+
+    /**
+     * Enumerates a 7-Zip archive once: every path, size and the solid flag
+     * are read a single time, then pages are sorted in natural order.
+     */
+    public static PageIndex fromArchive(IInArchive archive) throws SevenZipException {
+        List<String> names = new ArrayList<>();
+        List<Integer> items = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+
+        int numItems = archive.getNumberOfItems();
+        for (int i = 0; i < numItems; i++) {
+            Boolean isFolder = (Boolean) archive.getProperty(i, PropID.IS_FOLDER);
+            if (Boolean.TRUE.equals(isFolder)) continue;
+
+            String path = String.valueOf(archive.getProperty(i, PropID.PATH));
+            if (!isImagePath(path)) continue;
+
+            Object size = archive.getProperty(i, PropID.SIZE);
+            names.add(path);
+            items.add(i);
+            sizes.add(size instanceof Long ? (Long) size : -1L);
+        }
+
+        boolean solid = Boolean.TRUE.equals(archive.getArchiveProperty(PropID.SOLID));
+        return sorted(ENGINE_SEVEN_ZIP, solid, names, items, sizes);
+    }
+
+    /**
+     * Builds the page list from a parsed ZIP central directory.
+     * Item indices refer to positions in zip.getEntries().
+     */
+    public static PageIndex fromZip(MappedZipFile zip) {
+        List<String> names = new ArrayList<>();
+        List<Integer> items = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+
+        List<MappedZipFile.Entry> entries = zip.getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            MappedZipFile.Entry entry = entries.get(i);
+            if (entry.isDirectory() || !isImagePath(entry.getName())) continue;
+
+            names.add(entry.getName());
+            items.add(i);
+            sizes.add(entry.getSize());
+        }
+
+        return sorted(ENGINE_ZIP, false, names, items, sizes);
+    }
+
+    public static boolean isImagePath(String name) {
+        String path = name.toLowerCase(Locale.US);
+        return path.endsWith(".jpg") || path.endsWith(".jpeg") ||
+                path.endsWith(".png") || path.endsWith(".webp");
+    }
+
+    // Natural order (page2 < page10), keys built once per path
+    private static PageIndex sorted(int engine, boolean solid, List<String> names,
+                                    List<Integer> items, List<Long> sizes) {
+        int[] order = NaturalOrder.sortedOrder(names);
+
+        List<String> sortedNames = new ArrayList<>(order.length);
+        List<Integer> sortedItems = new ArrayList<>(order.length);
+        List<Long> sortedSizes = new ArrayList<>(order.length);
+        for (int i : order) {
+            sortedNames.add(names.get(i));
+            sortedItems.add(items.get(i));
+            sortedSizes.add(sizes.get(i));
+        }
+        return new PageIndex(engine, solid, sortedNames, sortedItems, sortedSizes);
+    }
+
+    // ---------- Persistence ----------
+
+    /**
+     * Loads the index for a fingerprint.
+     *
+     * @return the index, or null if missing, outdated or unreadable
+     */
+    public static PageIndex load(Context context, String fingerprint) {
+        if (fingerprint == null) return null;
+        File file = new File(getDir(context), fingerprint + ".idx");
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+
+            int engine = in.readByte();
+            boolean solid = in.readBoolean();
+            int count = in.readInt();
+            // Corrupt or foreign: more records than the file can hold
+            if (count < 0 || count > (file.length() - HEADER_SIZE) / MIN_RECORD_SIZE) return null;
+
+            String[] names = new String[count];
+            int[] items = new int[count];
+            long[] sizes = new long[count];
+            int[] widths = new int[count];
+            int[] heights = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                names[i] = in.readUTF();
+                items[i] = in.readInt();
+                sizes[i] = in.readLong();
+                widths[i] = in.readInt();
+                heights[i] = in.readInt();
+            }
+
+            // Touch for LRU pruning
+            file.setLastModified(System.currentTimeMillis());
+            return new PageIndex(engine, solid, names, items, sizes, widths, heights);
+
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable index " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index atomically (temp file + rename).
+     */
+    public void save(Context context, String fingerprint) {
+        if (fingerprint == null) return;
+        File dir = getDir(context);
+        File file = new File(dir, fingerprint + ".idx");
+        File tmp = new File(dir, fingerprint + ".tmp");
+
+        synchronized (this) {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(engine);
+                out.writeBoolean(solid);
+                out.writeInt(names.length);
+
+                for (int i = 0; i < names.length; i++) {
+                    out.writeUTF(names[i]);
+                    out.writeInt(itemIndices[i]);
+                    out.writeLong(sizes[i]);
+                    out.writeInt(widths[i]);
+                    out.writeInt(heights[i]);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write index " + file, e);
+                tmp.delete();
+                return;
+            }
+
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+            dirty = false;
+        }
+
+        pruneOldIndices(dir);
+    }
+
+    private static File getDir(Context context) {
+        File dir = new File(context.getCacheDir(), DIR_NAME);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    // Keeps only the most recently used index files
+    private static void pruneOldIndices(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".idx"));
+        if (files == null || files.length <= MAX_INDEX_FILES) return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length - MAX_INDEX_FILES; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.graphics.pdf.PdfRenderer;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * PdfRendererPool - hands out the PDF's one PdfRenderer to one caller at a time.
+ * Since API 26 every PdfRenderer call in the process (open, openPage, render,
+ * close) takes the same static pdfium lock, so more renderers don't render
+ * more pages at once: each would only add a parsed document and a
+ * descriptor. Parallel work belongs outside the renderer instead (bitmap
+ * allocation, display copies, JPEG pages decoded without it).
+ * Waiters look at their CancellationSignal, so cancelled loads leave the
+ * queue without interrupting the worker (an interrupt would close the
+ * comic's shared FileChannel).
+ */
+public final class PdfRendererPool implements Closeable {
+
+    // Waiting callers look at their CancellationSignal this often
+    private static final long CANCEL_POLL_MS = 50L;
+
+    private final PdfRenderer renderer;
+    private final int pageCount;
+
+    private boolean busy = false;
+    private boolean closed = false;
+
+    /**
+     * @param pfd descriptor of the PDF, owned (and closed) by the caller
+     */
+    public PdfRendererPool(ParcelFileDescriptor pfd) throws IOException {
+        // The renderer owns its duplicate descriptor and closes it with itself
+        ParcelFileDescriptor dup = pfd.dup();
+        try {
+            // Fails here for files that aren't a readable PDF
+            renderer = new PdfRenderer(dup);
+        } catch (IOException | RuntimeException e) {
+            try { dup.close(); } catch (Exception ignored) {}
+            throw e;
+        }
+        pageCount = renderer.getPageCount();
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Borrows the renderer, waiting while another page or tile uses it.
+     * A cancelled wait throws OperationCanceledException.
+     *
+     * @param cancel may be null
+     */
+    public synchronized PdfRenderer acquire(CancellationSignal cancel) throws IOException, InterruptedException {
+        while (busy && !closed) {
+            if (cancel != null && cancel.isCanceled()) throw new OperationCanceledException();
+            wait(CANCEL_POLL_MS);
+        }
+        if (closed) throw new IOException("Renderer pool closed");
+        busy = true;
+        return renderer;
+    }
+
+    // Returns the borrowed renderer (its pages must be closed).
+    public void release(PdfRenderer borrowed) {
+        if (borrowed == null) return;
+        boolean closeNow;
+        synchronized (this) {
+            busy = false;
+            closeNow = closed;
+            notifyAll();
+        }
+        if (closeNow) closeQuietly();
+    }
+
+    /**
+     * Closes the renderer now, or on release if it's borrowed.
+     * The original descriptor is left open for the owner to close.
+     */
+    @Override
+    public void close() {
+        boolean closeNow;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            closeNow = !busy;
+            notifyAll();
+        }
+        if (closeNow) closeQuietly();
+    }
+
+    private void closeQuietly() {
+        try { renderer.close(); } catch (Exception ignored) {}
+    }
+}
@@ -0,0 +1,232 @@
+package com.codecademy.comicreader.view.sources;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import com.codecademy.comicreader.utils.PageBuffer;
+import com.codecademy.comicreader.utils.PriorityScheduler;
+
+import net.sf.sevenzipjbinding.ExtractAskMode;
+import net.sf.sevenzipjbinding.ExtractOperationResult;
+import net.sf.sevenzipjbinding.IArchiveExtractCallback;
+import net.sf.sevenzipjbinding.ISequentialOutStream;
+import net.sf.sevenzipjbinding.SevenZipException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * SolidPageStore - single-pass extraction for solid RAR archives.
+ * In a solid archive every extractSlow() restarts decompression at the
+ * beginning of the solid block, so random page access is O(n).
+ * This store runs ONE sequential archive.extract() over all pages in
+ * archive order and spills each page's (already image-compressed) bytes
+ * into a bounded temp file. Random access is then a positional read.
+ * Pages beyond the byte cap are not stored; callers fall back to extractSlow.
+ * The pass is one PREFETCH task in the scheduler's DECODE lane, pausing at
+ * checkpoints while foreground pages wait; close() cancels its signal.
+ */
+public final class SolidPageStore {
+
+    private static final String TAG = "SolidPageStore";
+    private static final long STALE_FILE_AGE_MS = 24L * 60L * 60L * 1000L;
+
+    // Waiting readers look at their CancellationSignal this often
+    private static final long CANCEL_POLL_MS = 50L;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel store;
+    private final long maxBytes;
+
+    // item index -> {offset, length} of stored pages
+    private final Map<Integer, long[]> stored = new HashMap<>();
+    private boolean finished = false;
+    private volatile boolean closed = false;
+
+    private final PriorityScheduler.TaskGroup passGroup;
+    private final CancellationSignal passCancel = new CancellationSignal();
+    private volatile Future<?> passTask;
+
+    /**
+     * @param cacheDir  directory for the temporary page store
+     * @param maxBytes  maximum bytes spilled to disk
+     * @param scheduler runs the sequential pass
+     */
+    public SolidPageStore(File cacheDir, long maxBytes, PriorityScheduler scheduler) throws IOException {
+        File dir = new File(cacheDir, "solid_pages");
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        deleteStaleFiles(dir);
+
+        this.file = File.createTempFile("solid", ".pages", dir);
+        this.raf = new RandomAccessFile(file, "rw");
+        this.store = raf.getChannel();
+        this.maxBytes = maxBytes;
+        this.passGroup = scheduler.newGroup(PriorityScheduler.Lane.DECODE,
+                PriorityScheduler.Priority.PREFETCH, 1);
+    }
+
+    /**
+     * Starts the sequential pass in the background.
+     * The pass borrows one archive handle from the pool for its whole duration.
+     *
+     * @param handles     archive handle pool of the source
+     * @param itemIndices archive item indices of all pages
+     */
+    public void start(ArchiveHandlePool handles, int[] itemIndices) {
+        int[] ordered = itemIndices.clone();
+        Arrays.sort(ordered); // archive order = one pass through the solid stream
+
+        passTask = passGroup.submit(PriorityScheduler.Priority.PREFETCH, () -> {
+            ArchiveHandlePool.Handle handle = null;
+            try {
+                handle = handles.acquire();
+                handle.archive.extract(ordered, false, new SpillCallback());
+            } catch (Exception e) {
+                // Cap reached, source closed or archive error: remaining pages use extractSlow
+                Log.w(TAG, "Sequential pass stopped: " + e.getMessage());
+            } finally {
+                handles.release(handle);
+                synchronized (this) {
+                    finished = true;
+                    notifyAll();
+                }
+            }
+        }, passCancel);
+    }
+
+    /**
+     * Returns the stored bytes of a page, waiting for the pass to reach it.
+     * A cancelled wait throws OperationCanceledException, so a dropped
+     * prefetch of a late page doesn't hold its worker until the pass gets there.
+     *
+     * @param cancel may be null
+     * @return pooled page bytes (caller closes), or null if the pass finished without storing it
+     */
+    public PageBuffer read(int itemIndex, CancellationSignal cancel) throws IOException, InterruptedException {
+        long[] region;
+        synchronized (this) {
+            while ((region = stored.get(itemIndex)) == null && !finished && !closed) {
+                if (cancel != null && cancel.isCanceled()) throw new OperationCanceledException();
+                wait(CANCEL_POLL_MS);
+            }
+            if (region == null || closed) return null;
+        }
+
+        int length = (int) region[1];
+        PageBuffer page = new PageBuffer(length);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(page.getData(), 0, length);
+            long position = region[0];
+            while (buffer.hasRemaining()) {
+                int n = store.read(buffer, position + buffer.position());
+                if (n < 0) throw new IOException("Page store truncated");
+            }
+            page.setLength(length);
+            return page;
+        } catch (IOException e) {
+            page.close();
+            throw e;
+        }
+    }
+
+    // Stops the pass and deletes the store file.
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        // Dequeues or signals the pass: an interrupt would close the archive's shared channel
+        passGroup.shutdown();
+        Future<?> task = passTask;
+        if (task != null) task.cancel(false);
+        passCancel.cancel();
+        try { store.close(); } catch (Exception ignored) {}
+        try { raf.close(); } catch (Exception ignored) {}
+        if (!file.delete()) Log.w(TAG, "Failed to delete " + file);
+    }
+
+    // Leftovers from sessions that were killed before close()
+    private static void deleteStaleFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+
+        long now = System.currentTimeMillis();
+        for (File f : files) {
+            if (now - f.lastModified() > STALE_FILE_AGE_MS && !f.delete()) {
+                Log.w(TAG, "Failed to delete stale store " + f);
+            }
+        }
+    }
+
+    /**
+     * Appends every extracted item to the store file.
+     */
+    private final class SpillCallback implements IArchiveExtractCallback {
+
+        private long writePosition = 0L;
+        private int currentItem = -1;
+        private long currentStart = 0L;
+
+        @Override
+        public ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+            if (extractAskMode != ExtractAskMode.EXTRACT) return null;
+
+            currentItem = index;
+            currentStart = writePosition;
+
+            return data -> {
+                if (closed || passCancel.isCanceled()) throw new SevenZipException("Store closed");
+                PriorityScheduler.checkpoint();
+                if (writePosition + data.length > maxBytes) {
+                    throw new SevenZipException("Page store full");
+                }
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+                    while (buffer.hasRemaining()) {
+                        writePosition += store.write(buffer, writePosition);
+                    }
+                } catch (IOException e) {
+                    throw new SevenZipException("Page store write failed", e);
+                }
+                return data.length;
+            };
+        }
+
+        @Override
+        public void prepareOperation(ExtractAskMode extractAskMode) {
+        }
+
+        @Override
+        public void setOperationResult(ExtractOperationResult result) {
+            if (currentItem < 0) return;
+
+            if (result == ExtractOperationResult.OK) {
+                synchronized (SolidPageStore.this) {
+                    stored.put(currentItem, new long[]{currentStart, writePosition - currentStart});
+                    SolidPageStore.this.notifyAll();
+                }
+            } else {
+                // Drop the partial item
+                writePosition = currentStart;
+            }
+            currentItem = -1;
+        }
+
+        @Override
+        public void setTotal(long total) {
+        }
+
+        @Override
+        public void setCompleted(long complete) {
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.codecademy.comicreader.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for MappedZipFile, checked against java.util.zip.ZipFile.
+ */
+public class MappedZipFileTest {
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // Compressible: repeated text, so DEFLATED entries really shrink
+    private static byte[] text(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) data[i] = (byte) ('a' + (i / 7) % 26);
+        return data;
+    }
+
+    private static ZipEntry stored(String name, byte[] data) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+
+    private static void put(ZipOutputStream zip, ZipEntry entry, byte[] data) throws IOException {
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static File write(ByteArrayOutputStream bytes) throws IOException {
+        File file = File.createTempFile("archive", ".cbz");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bytes.writeTo(out);
+        }
+        return file;
+    }
+
+    private static MappedZipFile open(File file) throws IOException {
+        return new MappedZipFile(new MappedFileInStream(new RandomAccessFile(file, "r").getChannel()));
+    }
+
+    private static byte[] expected(ZipFile reference, String name) throws IOException {
+        try (InputStream in = reference.getInputStream(reference.getEntry(name))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) out.write(chunk, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] read(MappedZipFile zip, MappedZipFile.Entry entry) throws IOException {
+        if (entry.getMethod() == MappedZipFile.METHOD_STORED) {
+            ByteBuffer data = zip.getStoredData(entry);
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return bytes;
+        }
+        return zip.inflate(entry);
+    }
+
+    // Every entry reads back the same bytes as ZipFile
+    private static void assertMatchesReference(File file, int expectedEntries) throws IOException {
+        MappedZipFile zip = open(file);
+        assertEquals(expectedEntries, zip.getEntries().size());
+
+        try (ZipFile reference = new ZipFile(file)) {
+            for (MappedZipFile.Entry entry : zip.getEntries()) {
+                assertTrue(entry.getName(), zip.isSupported(entry));
+                assertArrayEquals(entry.getName(), expected(reference, entry.getName()), read(zip, entry));
+            }
+        }
+    }
+
+    @Test
+    public void storedAndDeflatedEntries_matchZipFile() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            byte[] cover = randomBytes(300_000, 1);
+            put(zip, stored("001.jpg", cover), cover);
+
+            ZipEntry deflated = new ZipEntry("002.png");
+            deflated.setMethod(ZipEntry.DEFLATED);
+            put(zip, deflated, text(500_000));
+
+            byte[] empty = new byte[0];
+            put(zip, stored("empty.txt", empty), empty);
+        }
+        assertMatchesReference(write(bytes), 3);
+    }
+
+    @Test
+    public void deflatedWithDataDescriptor_usesCentralDirectorySizes() throws IOException {
+        // ZipOutputStream streams DEFLATED entries: sizes follow the data (flag bit 3)
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            put(zip, new ZipEntry("pages/01.jpg"), text(200_000));
+            put(zip, new ZipEntry("pages/02.jpg"), randomBytes(100_000, 2));
+        }
+        File file = write(bytes);
+
+        MappedZipFile zip = open(file);
+        MappedZipFile.Entry first = zip.getEntries().get(0);
+        assertEquals(MappedZipFile.METHOD_DEFLATED, first.getMethod());
+        assertEquals(200_000, first.getSize());
+
+        // Into a caller buffer, as CBZPageSource does with pooled buffers
+        byte[] out = new byte[(int) first.getSize()];
+        assertEquals(200_000, zip.inflate(first, out));
+        assertArrayEquals(text(200_000), out);
+
+        assertMatchesReference(file, 2);
+    }
+
+    @Test
+    public void archiveComment_isSkippedWhenFindingTheDirectory() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            byte[] page = randomBytes(10_000, 3);
+            put(zip, stored("page.jpg", page), page);
+            // Contains the end-of-directory signature to mislead a naive search
+            zip.setComment("Scanned by someone PK\u0005\u0006 " + new String(text(2_000)));
+        }
+        assertMatchesReference(write(bytes), 1);
+    }
+
+    @Test
+    public void moreThan65535Entries_readsZip64Directory() throws IOException {
+        // The entry count overflows the classic end record, ZipOutputStream adds the ZIP64 one
+        int count = 70_000;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            byte[] page = {1, 2, 3};
+            for (int i = 0; i < count; i++) put(zip, stored("p" + i + ".jpg", page), page);
+        }
+
+        MappedZipFile zip = open(write(bytes));
+        assertEquals(count, zip.getEntries().size());
+        MappedZipFile.Entry last = zip.getEntries().get(count - 1);
+        assertEquals("p" + (count - 1) + ".jpg", last.getName());
+        assertArrayEquals(new byte[]{1, 2, 3}, read(zip, last));
+    }
+
+    @Test
+    public void namesWithoutUtf8Flag_areCp437() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Written as older Windows tools do: DOS code page, flag bit 11 clear
+        try (ZipOutputStream zip = new ZipOutputStream(bytes, Charset.forName("IBM437"))) {
+            byte[] page = {1, 2, 3};
+            put(zip, stored("caf\u00e9.jpg", page), page);
+        }
+        assertEquals("caf\u00e9.jpg", open(write(bytes)).getEntries().get(0).getName());
+    }
+
+    @Test
+    public void zip64FieldPastTheExtraField_isIgnored() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            byte[] page = {1, 2, 3};
+            ZipEntry entry = stored("page.jpg", page);
+            // Placeholder id, patched to ZIP64 below (ZipOutputStream strips real ones)
+            entry.setExtra(new byte[]{(byte) 0xFE, (byte) 0xCA, 8, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+            put(zip, entry, page);
+        }
+        ByteBuffer zip = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = zip.limit() - 22;
+        int cen = zip.getInt(eocd + 16);
+        int extra = cen + 46 + zip.getShort(cen + 28);
+
+        // Saturated size, and a ZIP64 field claiming 8 bytes the extra field doesn't
+        // have, ending right at the directory's end
+        zip.putInt(cen + 24, 0xFFFFFFFF);
+        zip.putShort(cen + 30, (short) 4);
+        zip.putShort(extra, (short) 0x0001);
+        zip.putInt(eocd + 12, zip.getInt(eocd + 12) - 8);
+
+        ByteArrayOutputStream patched = new ByteArrayOutputStream();
+        patched.write(zip.array());
+        MappedZipFile parsed = open(write(patched));
+        assertEquals(1, parsed.getEntries().size());
+        assertEquals(0xFFFFFFFFL, parsed.getEntries().get(0).getSize());
+    }
+
+    @Test
+    public void notAZip_throws() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(randomBytes(4_096, 4));
+        try {
+            open(write(bytes));
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // CBZPageSource falls back to 7-Zip
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.codecademy.comicreader.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for NaturalOrder page sorting.
+ */
+public class NaturalOrderTest {
+
+    private static List<String> sort(String... paths) {
+        List<String> input = Arrays.asList(paths);
+        int[] order = NaturalOrder.sortedOrder(input);
+
+        List<String> result = new ArrayList<>();
+        for (int i : order) result.add(input.get(i));
+        return result;
+    }
+
+    @Test
+    public void numbers_compareByValue() {
+        assertEquals(Arrays.asList("page1.jpg", "page2.jpg", "page10.jpg"),
+                sort("page10.jpg", "page2.jpg", "page1.jpg"));
+    }
+
+    @Test
+    public void leadingZeros_matchUnpadded() {
+        assertEquals(Arrays.asList("p009.png", "p10.png", "p011.png"),
+                sort("p011.png", "p10.png", "p009.png"));
+    }
+
+    @Test
+    public void nestedFolders_sortedPerLevel() {
+        assertEquals(Arrays.asList("Vol 2/ch 1/01.jpg", "Vol 2/ch 10/01.jpg", "Vol 10/ch 1/01.jpg"),
+                sort("Vol 10/ch 1/01.jpg", "Vol 2/ch 10/01.jpg", "Vol 2/ch 1/01.jpg"));
+    }
+
+    @Test
+    public void chapterDecimals_sortBetweenChapters() {
+        assertEquals(Arrays.asList("ch9.jpg", "ch9.5.jpg", "ch10.jpg"),
+                sort("ch10.jpg", "ch9.5.jpg", "ch9.jpg"));
+    }
+
+    @Test
+    public void caseAndSeparators_ignored() {
+        assertTrue(NaturalOrder.compare("Page_2.jpg", "page 10.jpg") < 0);
+        assertTrue(NaturalOrder.compare("v01-c02.jpg", "V01 C10.jpg") < 0);
+    }
+
+    @Test
+    public void windowsSeparators_treatedAsFolders() {
+        assertEquals(Arrays.asList("a\\2.jpg", "a/10.jpg"),
+                sort("a/10.jpg", "a\\2.jpg"));
+    }
+
+    @Test
+    public void order_isTotalAndStable() {
+        assertEquals(0, NaturalOrder.compare("same.jpg", "same.jpg"));
+        assertNotEquals(0, NaturalOrder.compare("01.jpg", "1.jpg"));
+        assertNotEquals(0, NaturalOrder.compare("1.jpg", "1.png"));
+    }
+}
@@ -0,0 +1,139 @@
+package com.codecademy.comicreader.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for PdfImagePages single-JPEG page detection.
+ */
+public class PdfImagePagesTest {
+
+    // Only the SOI marker is checked, the rest is opaque
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 1, 2, 3, 4, (byte) 0xFF, (byte) 0xD9};
+
+    private static final String IMAGE_DICT = "/Type /XObject /Subtype /Image /Width 800 /Height 1200"
+            + " /ColorSpace /DeviceRGB /BitsPerComponent 8 /Filter /DCTDecode";
+
+    // Builds a PDF with a classic xref table; objects are numbered from 1
+    private static byte[] pdf(String... objects) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("%PDF-1.4\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i < objects.length; i++) {
+            offsets.add(out.size());
+            out.write(((i + 1) + " 0 obj\n" + objects[i] + "\nendobj\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        int xref = out.size();
+        StringBuilder table = new StringBuilder("xref\n0 " + (objects.length + 1) + "\n0000000000 65535 f \n");
+        for (int offset : offsets) table.append(String.format("%010d 00000 n \n", offset));
+        table.append("trailer\n<< /Size ").append(objects.length + 1).append(" /Root 1 0 R >>\n")
+                .append("startxref\n").append(xref).append("\n%%EOF\n");
+        out.write(table.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return out.toByteArray();
+    }
+
+    private static String stream(String dict, String data) {
+        return "<< " + dict + " /Length " + data.length() + " >>\nstream\n" + data + "\nendstream";
+    }
+
+    private static String jpegStream(String dict) {
+        return stream(dict, new String(JPEG, StandardCharsets.ISO_8859_1));
+    }
+
+    // expectedPages: what PdfRenderer would report
+    private static PdfImagePages parse(byte[] pdf, int expectedPages) throws IOException {
+        File file = File.createTempFile("pages", ".pdf");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(pdf);
+        }
+        return PdfImagePages.parse(new MappedFileInStream(new RandomAccessFile(file, "r").getChannel()), expectedPages);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    @Test
+    public void fullPageJpeg_isServedFromTheFile() throws IOException {
+        PdfImagePages pages = parse(pdf(
+                "<< /Type /Catalog /Pages 2 0 R >>",
+                "<< /Type /Pages /Kids [3 0 R 6 0 R] /Count 2 /MediaBox [0 0 576 864] >>",
+                "<< /Type /Page /Parent 2 0 R /Resources << /XObject << /Im0 4 0 R >> >> /Contents 5 0 R >>",
+                jpegStream(IMAGE_DICT),
+                stream("", "q 576 0 0 864 0 0 cm /Im0 Do Q"),
+                "<< /Type /Page /Parent 2 0 R /Resources << >> /Contents 7 0 R >>",
+                stream("", "BT /F1 12 Tf (Hello) Tj ET")), 2);
+
+        assertNotNull(pages);
+        assertEquals(2, pages.getPageCount());
+
+        assertTrue(pages.isImagePage(0));
+        assertArrayEquals(new int[]{800, 1200}, pages.getImageSize(0));
+        assertArrayEquals(JPEG, bytes(pages.getJpeg(0)));
+
+        // Text page: rendered
+        assertFalse(pages.isImagePage(1));
+        assertNull(pages.getJpeg(1));
+    }
+
+    @Test
+    public void partialOrMaskedImages_areRendered() throws IOException {
+        PdfImagePages pages = parse(pdf(
+                "<< /Type /Catalog /Pages 2 0 R >>",
+                "<< /Type /Pages /Kids [3 0 R 6 0 R 7 0 R] /Count 3 /MediaBox [0 0 576 864] >>",
+                "<< /Type /Page /Parent 2 0 R /Resources << /XObject << /Im0 4 0 R /Im1 8 0 R >> >> /Contents 5 0 R >>",
+                jpegStream(IMAGE_DICT),
+                // Half the page only
+                stream("", "q 288 0 0 432 0 0 cm /Im0 Do Q"),
+                "<< /Type /Page /Parent 2 0 R /Resources << /XObject << /Im1 8 0 R >> >> /Contents 9 0 R >>",
+                "<< /Type /Page /Parent 2 0 R /Resources << /XObject << /Im0 4 0 R >> >> /Contents 10 0 R /Rotate 90 >>",
+                jpegStream(IMAGE_DICT + " /SMask 4 0 R"),
+                stream("", "q 576 0 0 864 0 0 cm /Im1 Do Q"),
+                stream("", "q 576 0 0 864 0 0 cm /Im0 Do Q")), 3);
+
+        // No page qualifies, nothing to gain over PdfRenderer
+        assertNull(pages);
+    }
+
+    @Test
+    public void cyclicPageTree_throws() {
+        // Node 2 lists itself and its page twice: must fail fast, not walk 2^depth paths
+        try {
+            parse(pdf(
+                    "<< /Type /Catalog /Pages 2 0 R >>",
+                    "<< /Type /Pages /Kids [2 0 R 3 0 R 3 0 R] /Count 3 /MediaBox [0 0 576 864] >>",
+                    "<< /Type /Page /Parent 2 0 R /Resources << /XObject << /Im0 4 0 R >> >> /Contents 5 0 R >>",
+                    jpegStream(IMAGE_DICT),
+                    stream("", "q 576 0 0 864 0 0 cm /Im0 Do Q")), 1);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // Caller falls back to rendering every page
+        }
+    }
+
+    @Test
+    public void unreadableFile_throws() {
+        try {
+            parse("%PDF-1.4\nnot really a pdf\n".getBytes(StandardCharsets.ISO_8859_1), 1);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // Caller falls back to rendering every page
+        }
+    }
+}